@@ -1,7 +1,6 @@
 package ataxx;
 
 import static ataxx.PieceColor.*;
-import static ataxx.Board.*;
 
 import java.util.ArrayList;
 
@@ -66,32 +65,7 @@ class AI extends Player {
         if (depth == 0) {
             return staticScore(board);
         } else {
-            ArrayList<Move> moves = new ArrayList<Move>();
-            for (int a = 0; a < EXTENDED_SIDE * EXTENDED_SIDE; a += 1) {
-                if (board.get(a) == board.whoseMove()) {
-                    for (int i = -2; i <= 2; i += 1) {
-                        for (int j = -2; j <= 2; j += 1) {
-                            int toIndex = board.neighbor(a, i, j);
-                            if (board.get(toIndex) == EMPTY) {
-                                char c0 = (char) ((a - (EXTENDED_SIDE * 2 + 2))
-                                    % EXTENDED_SIDE + 'a');
-                                char r0 = (char) ((a - (EXTENDED_SIDE * 2 + 2))
-                                    / EXTENDED_SIDE + '1');
-                                char c1 = (char)
-                                    ((toIndex - (EXTENDED_SIDE * 2 + 2))
-                                    % EXTENDED_SIDE + 'a');
-                                char r1 = (char)
-                                    ((toIndex - (EXTENDED_SIDE * 2 + 2))
-                                    / EXTENDED_SIDE + '1');
-                                moves.add(Move.move(c0, r0, c1, r1));
-                            }
-                        }
-                    }
-                }
-            }
-            if (board.legalMove(Move.pass())) {
-                moves.add(Move.pass());
-            }
+            ArrayList<Move> moves = board.legalMoves();
             int alphascore = alpha;
             int betascore = beta;
             for (int i = 0; i < moves.size(); i += 1) {
@@ -5,7 +5,6 @@ package ataxx;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Stack;
 import java.util.Observable;
 
 import static ataxx.PieceColor.*;
@@ -29,6 +28,11 @@ import static ataxx.GameException.error;
  *  integer, which we call its "linearized index".  This is simply the
  *  number of the square in row-major order (counting from 0).
  *
+ *  Internally, the 49 squares of the real board are bits of three long
+ *  masks (red pieces, blue pieces and blocks), so that counting pieces,
+ *  finding flips and testing for moves are a few shifts, ANDs and bit
+ *  counts rather than scans of all squares.
+ *
  *  Moves on this board are denoted by Moves.
  *  @author Jacky Tian
  */
@@ -47,21 +51,21 @@ class Board extends Observable {
 
     /** A new, cleared board at the start of the game. */
     Board() {
-        _board = new PieceColor[EXTENDED_SIDE * EXTENDED_SIDE];
         clear();
     }
 
     /** A copy of B. */
     @SuppressWarnings("unchecked")
     Board(Board b) {
-        _board = b._board.clone();
+        _red = b._red;
+        _blue = b._blue;
+        _blocks = b._blocks;
         _whoseMove = b._whoseMove;
         jumpCounter = b.jumpCounter;
         _moves = b._moves;
         _allMoves = (ArrayList<Move>) b._allMoves.clone();
-        _redPieces = b._redPieces;
-        _bluePieces = b._bluePieces;
-        _undo = (Stack) b._undo.clone();
+        _flips = b._flips.clone();
+        _numFlips = b._numFlips;
     }
 
     /** Return the linearized index of square COL ROW. */
@@ -75,33 +79,33 @@ class Board extends Observable {
         return sq + dc + dr * EXTENDED_SIDE;
     }
 
+    /** Return the mask of the square with linearized index SQ, or 0 if
+     *  SQ is in the border. */
+    static long bit(int sq) {
+        int b = BIT[sq];
+        return b < 0 ? 0 : 1L << b;
+    }
+
+    /** Return the mask of the squares that are within one row and column
+     *  of a square in SQUARES, including SQUARES. */
+    static long grow(long squares) {
+        long rows = (squares | (squares << 1) & ~COLUMN_A
+                     | (squares >>> 1) & ~COLUMN_G) & ALL_SQUARES;
+        return (rows | (rows << SIDE) | (rows >>> SIDE)) & ALL_SQUARES;
+    }
+
     /** Clear me to my starting state, with pieces in their initial
      *  positions and no blocks. */
     void clear() {
         _whoseMove = RED;
         _moves = 0;
         _allMoves = new ArrayList<Move>();
-        _undo = new Stack<ArrayList<Integer>>();
+        _flips = new long[16];
+        _numFlips = 0;
         jumpCounter = 0;
-        _redPieces = 2;
-        _bluePieces = 2;
-        for (int i = 0; i < _board.length; i += 1) {
-            if (i <= EXTENDED_SIDE * 2 - 1
-                || i >= EXTENDED_SIDE * 9) {
-                _board[i] = BLOCKED;
-            } else if (i % 11 == 0 || i % 11 == 1
-                || i % 11 == 9 || i % 11 == 10) {
-                _board[i] = BLOCKED;
-            } else if (i == EXTENDED_SIDE * 2 + 8
-                || i == EXTENDED_SIDE * 8 + 2) {
-                _board[i] = RED;
-            } else if (i == EXTENDED_SIDE * 8 + 8
-                || i == EXTENDED_SIDE * 2 + 2) {
-                _board[i] = BLUE;
-            } else {
-                _board[i] = EMPTY;
-            }
-        }
+        _red = bit(index('g', '1')) | bit(index('a', '7'));
+        _blue = bit(index('a', '1')) | bit(index('g', '7'));
+        _blocks = 0;
 
         setChanged();
         notifyObservers();
@@ -113,7 +117,7 @@ class Board extends Observable {
     boolean gameOver() {
         if (jumpCounter >= JUMP_LIMIT) {
             return true;
-        } else if (_redPieces == 0 || _bluePieces == 0) {
+        } else if (_red == 0 || _blue == 0) {
             return true;
         } else if (!canMove(RED) && !canMove(BLUE)) {
             return true;
@@ -123,24 +127,12 @@ class Board extends Observable {
 
     /** Return number of red pieces on the board. */
     int redPieces() {
-        int count = 0;
-        for (PieceColor piece : _board) {
-            if (piece == RED) {
-                count += 1;
-            }
-        }
-        return count;
+        return Long.bitCount(_red);
     }
 
     /** Return number of blue pieces on the board. */
     int bluePieces() {
-        int count = 0;
-        for (PieceColor piece : _board) {
-            if (piece == BLUE) {
-                count += 1;
-            }
-        }
-        return count;
+        return Long.bitCount(_blue);
     }
 
     /** Return number of COLOR pieces on the board. */
@@ -150,72 +142,57 @@ class Board extends Observable {
         } else if (color == BLUE) {
             return bluePieces();
         } else if (color == BLOCKED) {
-            int count = 0;
-            for (PieceColor piece : _board) {
-                if (piece == BLOCKED) {
-                    count += 1;
-                }
-            }
-            return count - SETBLOCKS;
+            return Long.bitCount(_blocks);
         } else if (color == EMPTY) {
-            int count = 0;
-            for (PieceColor piece : _board) {
-                if (piece == EMPTY) {
-                    count += 1;
-                }
-            }
-            return count;
+            return Long.bitCount(empty());
         }
         return -1;
     }
 
-    /** Increment numPieces(COLOR) by K. */
-    private void incrPieces(PieceColor color, int k) {
-        if (color == RED) {
-            _redPieces += k;
-        } else if (color == BLUE) {
-            _bluePieces += k;
-        }
-    }
-
     /** The current contents of square CR, where 'a'-2 <= C <= 'g'+2, and
      *  '1'-2 <= R <= '7'+2.  Squares outside the range a1-g7 are all
      *  BLOCKED.  Returns the same value as get(index(C, R)). */
     PieceColor get(char c, char r) {
-        return _board[index(c, r)];
+        return get(index(c, r));
     }
 
     /** Return the current contents of square with linearized index SQ. */
     PieceColor get(int sq) {
-        return _board[sq];
-    }
-
-    /** Set get(C, R) to V, where 'a' <= C <= 'g', and
-     *  '1' <= R <= '7'. */
-    private void set(char c, char r, PieceColor v) {
-        set(index(c, r), v);
+        long b = bit(sq);
+        if ((_red & b) != 0) {
+            return RED;
+        } else if ((_blue & b) != 0) {
+            return BLUE;
+        } else if (b == 0 || (_blocks & b) != 0) {
+            return BLOCKED;
+        } else {
+            return EMPTY;
+        }
     }
 
-    /** Set square with linearized index SQ to V.  This operation is
-     *  undoable. */
-    private void set(int sq, PieceColor v) {
-        if (v == RED) {
-            incrPieces(RED, 1);
-        } else if (v == BLUE) {
-            incrPieces(BLUE, 1);
+    /** Return the mask of the pieces of color WHO. */
+    private long pieces(PieceColor who) {
+        if (who == RED) {
+            return _red;
+        } else if (who == BLUE) {
+            return _blue;
+        } else {
+            return 0;
         }
-        _board[sq] = v;
-
     }
 
-    /** Set square at C R to V (not undoable). */
-    private void unrecordedSet(char c, char r, PieceColor v) {
-        _board[index(c, r)] = v;
+    /** Set the mask of the pieces of color WHO to PIECES. */
+    private void setPieces(PieceColor who, long pieces) {
+        if (who == RED) {
+            _red = pieces;
+        } else {
+            _blue = pieces;
+        }
     }
 
-    /** Set square at linearized index SQ to V (not undoable). */
-    private void unrecordedSet(int sq, PieceColor v) {
-        _board[sq] = v;
+    /** Return the mask of the empty squares. */
+    private long empty() {
+        return ALL_SQUARES & ~(_red | _blue | _blocks);
     }
 
     /** Return true iff MOVE is legal on the current board. */
@@ -225,11 +202,11 @@ class Board extends Observable {
         } else if (move.isPass()) {
             return !canMove(_whoseMove);
         } else {
-            if (_board[move.fromIndex()] != _whoseMove) {
+            if ((pieces(_whoseMove) & bit(move.fromIndex())) == 0) {
                 return false;
             } else {
                 if (move.isJump() || move.isExtend()) {
-                    if (_board[move.toIndex()] == EMPTY) {
+                    if ((empty() & bit(move.toIndex())) != 0) {
                         return true;
                     }
                 }
@@ -241,19 +218,28 @@ class Board extends Observable {
     /** Return true iff player WHO can move, ignoring whether it is
      *  that player's move and whether the game is over. */
     boolean canMove(PieceColor who) {
-        for (int i = 0; i < _board.length; i += 1) {
-            if (_board[i] == who) {
-                for (int j = i - 2; j <= i + 2; j += 1) {
-                    for (int k = j - EXTENDED_SIDE * 2;
-                        k <= j + EXTENDED_SIDE * 2; k += 11) {
-                        if (_board[k] == EMPTY) {
-                            return true;
-                        }
-                    }
-                }
+        return (grow(grow(pieces(who))) & empty()) != 0;
+    }
+
+    /** Return the legal moves of the player on move: a pass if there
+     *  are no others.  The moves are ordered by the linearized indices of
+     *  their from squares and then of their to squares. */
+    ArrayList<Move> legalMoves() {
+        ArrayList<Move> moves = new ArrayList<Move>();
+        long empty = empty();
+        for (long from = pieces(_whoseMove); from != 0; from &= from - 1) {
+            int b0 = Long.numberOfTrailingZeros(from);
+            char c0 = (char) ('a' + b0 % SIDE), r0 = (char) ('1' + b0 / SIDE);
+            for (long to = REACH[b0] & empty; to != 0; to &= to - 1) {
+                int b1 = Long.numberOfTrailingZeros(to);
+                moves.add(Move.move(c0, r0, (char) ('a' + b1 % SIDE),
+                                    (char) ('1' + b1 / SIDE)));
             }
         }
-        return false;
+        if (moves.isEmpty()) {
+            moves.add(Move.pass());
+        }
+        return moves;
     }
 
     /** Return the color of the player who has the next move.  The
@@ -293,29 +279,25 @@ class Board extends Observable {
             return;
         }
 
-        ArrayList<Integer> flips = new ArrayList<Integer>();
-        _board[move.toIndex()] = _whoseMove;
-        for (int i = move.toIndex() - 12; i <= move.toIndex() - 10; i += 1) {
-            for (int j = 0; j <= EXTENDED_SIDE * 2; j += 11) {
-                if (_board[i + j] == _whoseMove.opposite()) {
-                    _board[i + j] = _whoseMove;
-                    flips.add(i + j);
-                    incrPieces(_whoseMove, 1);
-                    incrPieces(_whoseMove.opposite(), -1);
-                }
-            }
-        }
+        PieceColor opponent = _whoseMove.opposite();
+        int to = BIT[move.toIndex()];
+        long flips = ADJACENT[to] & pieces(opponent);
+        long mine = pieces(_whoseMove) | flips | 1L << to;
         _moves += 1;
         if (move.isJump()) {
             jumpCounter += 1;
-            _board[move.fromIndex()] = EMPTY;
+            mine &= ~bit(move.fromIndex());
         } else {
             jumpCounter = 0;
-            incrPieces(_whoseMove, 1);
         }
+        setPieces(_whoseMove, mine);
+        setPieces(opponent, pieces(opponent) & ~flips);
         _allMoves.add(move);
-        _undo.push(flips);
-        PieceColor opponent = _whoseMove.opposite();
+        if (_numFlips == _flips.length) {
+            _flips = Arrays.copyOf(_flips, 2 * _numFlips);
+        }
+        _flips[_numFlips] = flips;
+        _numFlips += 1;
         _whoseMove = opponent;
         setChanged();
         notifyObservers();
@@ -333,33 +315,24 @@ class Board extends Observable {
     }
 
     /** Undo the last move. */
-    @SuppressWarnings("unchecked")
     void undo() {
-        if (_undo.empty()) {
+        if (_allMoves.isEmpty()) {
             return;
         }
-        Move last = _allMoves.get(_allMoves.size() - 1);
-        if (last.isPass()) {
-            _whoseMove = _whoseMove.opposite();
-            _moves -= 1;
-            _allMoves.remove(_allMoves.size() - 1);
-        } else {
-            ArrayList<Integer> recent = _undo.pop();
-            for (int i = 0; i < recent.size(); i += 1) {
-                _board[recent.get(i)] = _board[recent.get(i)].opposite();
-                incrPieces(_board[recent.get(i)].opposite(), -1);
-                incrPieces(_board[recent.get(i)], 1);
-            }
+        Move last = _allMoves.remove(_allMoves.size() - 1);
+        PieceColor mover = _whoseMove.opposite();
+        _whoseMove = mover;
+        _moves -= 1;
+        if (!last.isPass()) {
+            _numFlips -= 1;
+            long flips = _flips[_numFlips];
+            long mine = pieces(mover) & ~(flips | bit(last.toIndex()));
             if (last.isJump()) {
-                _board[last.fromIndex()] = _whoseMove.opposite();
+                mine |= bit(last.fromIndex());
                 jumpCounter -= 1;
-            } else {
-                incrPieces(_whoseMove, -1);
             }
-            _board[last.toIndex()] = EMPTY;
-            _whoseMove = _whoseMove.opposite();
-            _moves -= 1;
-            _allMoves.remove(_allMoves.size() - 1);
+            setPieces(mover, mine);
+            setPieces(mover.opposite(), pieces(mover.opposite()) | flips);
         }
         setChanged();
         notifyObservers();
@@ -367,10 +340,7 @@ class Board extends Observable {
 
     /** Return true iff it is legal to place a block at C R. */
     boolean legalBlock(char c, char r) {
-        if (_board[index(c, r)] == EMPTY) {
-            return true;
-        }
-        return false;
+        return get(c, r) == EMPTY;
     }
 
     /** Return true iff it is legal to place a block at CR. */
@@ -384,7 +354,7 @@ class Board extends Observable {
      *  already occupied by a block.  It is an error to place a block on a
      *  piece. */
     void setBlock(char c, char r) {
-        if (_board[index(c, r)] != BLOCKED) {
+        if (get(c, r) != BLOCKED) {
             int cInt = 'a' + 'g' - c;
             char cMirror = (char) cInt;
             int rInt = '1' + '7' - r;
@@ -393,10 +363,8 @@ class Board extends Observable {
                 || !legalBlock(c, rMirror) || !legalBlock(cMirror, rMirror)) {
                 throw error("illegal block placement");
             } else {
-                _board[index(c, r)] = BLOCKED;
-                _board[index(cMirror, r)] = BLOCKED;
-                _board[index(c, rMirror)] = BLOCKED;
-                _board[index(cMirror, rMirror)] = BLOCKED;
+                _blocks |= bit(index(c, r)) | bit(index(cMirror, r))
+                    | bit(index(c, rMirror)) | bit(index(cMirror, rMirror));
             }
             setChanged();
             notifyObservers();
@@ -423,62 +391,95 @@ class Board extends Observable {
     @Override
     public boolean equals(Object obj) {
         Board other = (Board) obj;
-        return Arrays.equals(_board, other._board);
+        return _red == other._red && _blue == other._blue
+            && _blocks == other._blocks;
     }
 
     @Override
     public int hashCode() {
-        return Arrays.hashCode(_board);
+        return Long.hashCode(_red) * 31 * 31 + Long.hashCode(_blue) * 31
+            + Long.hashCode(_blocks);
     }
 
     /** Return a text depiction of the board (not a dump).  If LEGEND,
      *  supply row and column numbers around the edges. */
     String toString(boolean legend) {
-        String board = "";
-        for (int i = EXTENDED_SIDE * 8 + 2;
-            i >= EXTENDED_SIDE * 2 + 2; i -= 11) {
-            for (int j = i; j <= i + 6; j += 1) {
-                char piece;
-                if (_board[j] == RED) {
-                    piece = 'r';
-                } else if (_board[j] == BLUE) {
-                    piece = 'b';
-                } else if (_board[j] == BLOCKED) {
-                    piece = 'X';
+        StringBuilder board = new StringBuilder();
+        for (char r = '7'; r >= '1'; r -= 1) {
+            board.append("  ");
+            for (char c = 'a'; c <= 'g'; c += 1) {
+                PieceColor piece = get(c, r);
+                if (piece == RED) {
+                    board.append('r');
+                } else if (piece == BLUE) {
+                    board.append('b');
+                } else if (piece == BLOCKED) {
+                    board.append('X');
                 } else {
-                    piece = '-';
+                    board.append('-');
                 }
-
-                if (j % 11 == 2) {
-                    board = board + "  " + piece + ' ';
-                } else if (j % 11 != 8) {
-                    board = board + piece + ' ';
-                } else if (j == EXTENDED_SIDE * 2 + 8) {
-                    board = board + piece;
-                } else {
-                    board = board + piece + '\n';
+                if (c != 'g') {
+                    board.append(' ');
+                } else if (r != '1') {
+                    board.append('\n');
                 }
             }
         }
-        return board;
-    }
-
-    /** For reasons of efficiency in copying the board,
-     *  we use a 1D array to represent it, using the usual access
-     *  algorithm: row r, column c => index(r, c).
-     *
-     *  Next, instead of using a 7x7 board, we use an 11x11 board in
-     *  which the outer two rows and columns are blocks, and
-     *  row 2, column 2 actually represents row 0, column 0
-     *  of the real board.  As a result of this trick, there is no
-     *  need to special-case being near the edge: we don't move
-     *  off the edge because it looks blocked.
-     *
-     *  Using characters as indices, it follows that if 'a' <= c <= 'g'
-     *  and '1' <= r <= '7', then row c, column r of the board corresponds
-     *  to board[(c -'a' + 2) + 11 (r - '1' + 2) ], or by a little
-     *  re-grouping of terms, board[c + 11 * r + SQUARE_CORRECTION]. */
-    private final PieceColor[] _board;
+        return board.toString();
+    }
+
+    /** Mask of all 49 squares of the board. */
+    private static final long ALL_SQUARES = (1L << SIDE * SIDE) - 1;
+
+    /** Mask of the squares in column a. */
+    private static final long COLUMN_A;
+
+    /** Mask of the squares in column g. */
+    private static final long COLUMN_G;
+
+    /** BIT[SQ] is the bit number of the square with linearized index SQ
+     *  (SIDE * row + column, counting from a1), or -1 for border
+     *  squares. */
+    private static final int[] BIT = new int[EXTENDED_SIDE * EXTENDED_SIDE];
+
+    /** ADJACENT[B] is the mask of the squares one step from square
+     *  number B, into which a move there extends. */
+    private static final long[] ADJACENT = new long[SIDE * SIDE];
+
+    /** REACH[B] is the mask of the squares that a piece on square number
+     *  B can extend or jump to, if empty. */
+    private static final long[] REACH = new long[SIDE * SIDE];
+
+    static {
+        long columnA, columnG;
+        columnA = columnG = 0;
+        for (int r = 0; r < SIDE; r += 1) {
+            columnA |= 1L << SIDE * r;
+            columnG |= 1L << SIDE * r + SIDE - 1;
+        }
+        COLUMN_A = columnA;
+        COLUMN_G = columnG;
+        Arrays.fill(BIT, -1);
+        for (int r = 0; r < SIDE; r += 1) {
+            for (int c = 0; c < SIDE; c += 1) {
+                BIT[(r + 2) * EXTENDED_SIDE + c + 2] = SIDE * r + c;
+            }
+        }
+        for (int b = 0; b < SIDE * SIDE; b += 1) {
+            ADJACENT[b] = grow(1L << b) & ~(1L << b);
+            REACH[b] = grow(grow(1L << b)) & ~(1L << b);
+        }
+    }
+
+    /** Mask of the squares holding red pieces, bit SIDE * row + column
+     *  for each (counting from a1). */
+    private long _red;
+
+    /** Mask of the squares holding blue pieces. */
+    private long _blue;
+
+    /** Mask of the squares holding blocks (not counting the border). */
+    private long _blocks;
 
     /** Player that is on move. */
     private PieceColor _whoseMove;
@@ -492,14 +493,10 @@ class Board extends Observable {
     /** A list of all moves that have been made. */
     private ArrayList<Move> _allMoves;
 
-    /** Number of red pieces on the board. */
-    private int _redPieces;
-
-    /** Number of blue pieces on the board. */
-    private int _bluePieces;
-
-    /** Stack to keep track of undos. */
-    private Stack<ArrayList<Integer>> _undo;
-
+    /** _flips[K] is the mask of the pieces captured by the Kth non-pass
+     *  move in _allMoves, for use by undo. */
+    private long[] _flips;
 
+    /** Number of entries of _flips in use. */
+    private int _numFlips;
 }
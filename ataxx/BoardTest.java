@@ -73,4 +73,25 @@ public class BoardTest {
         assertFalse(b.legalMove(move));
         assertFalse(b.legalMove(Move.pass()));
     }
+
+    @Test public void testLegalMoves() {
+        Board b = new Board();
+        assertEquals(16, b.legalMoves().size());
+        for (Move move : b.legalMoves()) {
+            assertTrue(b.legalMove(move));
+        }
+        b.setBlock("c3");
+        assertEquals(14, b.legalMoves().size());
+        b.makeMove('g', '1', 'f', '2');
+        b.makeMove('g', '7', 'f', '5');
+        b.makeMove('f', '2', 'f', '4');
+        assertEquals(PieceColor.RED, b.get('f', '5'));
+        assertEquals(PieceColor.EMPTY, b.get('f', '2'));
+        assertEquals(4, b.redPieces());
+        assertEquals(1, b.bluePieces());
+        b.undo();
+        assertEquals(PieceColor.BLUE, b.get('f', '5'));
+        assertEquals(PieceColor.RED, b.get('f', '2'));
+        assertEquals(PieceColor.BLOCKED, b.get('h', '1'));
+    }
 }
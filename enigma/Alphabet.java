@@ -1,11 +1,16 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /* Extra Credit Only */
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  The mapping from characters to
+ *  indices is a reverse index built at construction: a dense table over
+ *  the range of the alphabet's characters when that range is compact, and
+ *  an open-addressing hash table otherwise.
  *  @author
  */
 class Alphabet {
@@ -15,6 +20,62 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _chars = chars;
+        char min = Character.MAX_VALUE, max = Character.MIN_VALUE;
+        for (int i = 0; i < chars.length(); i += 1) {
+            min = (char) Math.min(min, chars.charAt(i));
+            max = (char) Math.max(max, chars.charAt(i));
+        }
+        int span = chars.isEmpty() ? 0 : max - min + 1;
+        if (span <= Math.max(MIN_DENSE_SPAN, DENSE_FACTOR * chars.length())) {
+            _base = min;
+            _dense = new int[span];
+            Arrays.fill(_dense, -1);
+        } else {
+            int capacity = Integer.highestOneBit(2 * chars.length() - 1) << 1;
+            _keys = new char[capacity];
+            _values = new int[capacity];
+            Arrays.fill(_values, -1);
+        }
+        for (int i = 0; i < chars.length(); i += 1) {
+            addIndex(chars.charAt(i), i);
+        }
+    }
+
+    /** Record that C has index K. */
+    private void addIndex(char c, int k) {
+        if (indexOf(c) >= 0) {
+            throw error("duplicate character '%c' in alphabet", c);
+        }
+        if (_dense != null) {
+            _dense[c - _base] = k;
+        } else {
+            int h = slot(c);
+            while (_values[h] >= 0) {
+                h = (h + 1) & (_keys.length - 1);
+            }
+            _keys[h] = c;
+            _values[h] = k;
+        }
+    }
+
+    /** Return the index of C in this alphabet, or -1 if it is absent. */
+    private int indexOf(char c) {
+        if (_dense != null) {
+            int k = c - _base;
+            return k >= 0 && k < _dense.length ? _dense[k] : -1;
+        }
+        for (int h = slot(c); _values[h] >= 0;
+             h = (h + 1) & (_keys.length - 1)) {
+            if (_keys[h] == c) {
+                return _values[h];
+            }
+        }
+        return -1;
+    }
+
+    /** Return the first slot of the hash table to probe for C. */
+    private int slot(char c) {
+        return (c * HASH_MULTIPLIER >>> HASH_SHIFT) & (_keys.length - 1);
     }
 
     /** Returns the size of the alphabet. */
@@ -24,12 +85,7 @@ class Alphabet {
 
     /** Returns true if C is in this alphabet. */
     boolean contains(char c) {
-        for (int i = 0; i < size(); i++) {
-            if (_chars.charAt(i) == c) {
-                return true;
-            }
-        }
-        return false; // FIXME
+        return indexOf(c) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -43,12 +99,41 @@ class Alphabet {
 
     /** Returns the index of character C, which must be in the alphabet. */
     int toInt(char c) {
-        for (int i = 0; i < size(); i++) {
-            if (_chars.charAt(i) == c) {
-                return i;
-            }
+        int index = indexOf(c);
+        if (index < 0) {
+            throw error("character not in alphabet");
         }
-        throw error("character not in alphabet"); // FIXME
+        return index;
     }
 
+    /** Ranges of characters up to this long are always indexed densely. */
+    private static final int MIN_DENSE_SPAN = 1024;
+
+    /** Ranges of characters up to this multiple of the alphabet size are
+     *  indexed densely. */
+    private static final int DENSE_FACTOR = 4;
+
+    /** Multiplier used to hash characters. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
+
+    /** Shift applied to hashed characters, keeping their high bits. */
+    private static final int HASH_SHIFT = 16;
+
+    /** Smallest character of the alphabet, which has index 0 in _dense. */
+    private char _base;
+
+    /** For a compact alphabet, the index of each character C in the
+     *  alphabet at _dense[C - _base], or -1 if C is absent; otherwise
+     *  null. */
+    private int[] _dense;
+
+    /** For a sparse alphabet, the characters of the hash table; otherwise
+     *  null. */
+    private char[] _keys;
+
+    /** For a sparse alphabet, the index of the character in the
+     *  corresponding slot of _keys, or -1 for an empty slot; otherwise
+     *  null. */
+    private int[] _values;
+
 }
@@ -0,0 +1,63 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Check that ALPHA maps each character of CHARS to its index and
+     *  back, and does not contain any of the characters of ABSENT. */
+    private void checkAlphabet(Alphabet alpha, String chars, String absent) {
+        assertEquals("wrong size", chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            char c = chars.charAt(i);
+            assertTrue(msg("alphabet", "missing '%c'", c), alpha.contains(c));
+            assertEquals(msg("alphabet", "wrong index of '%c'", c),
+                         i, alpha.toInt(c));
+            assertEquals(msg("alphabet", "wrong character %d", i),
+                         c, alpha.toChar(i));
+        }
+        for (int i = 0; i < absent.length(); i += 1) {
+            assertFalse(msg("alphabet", "contains '%c'", absent.charAt(i)),
+                        alpha.contains(absent.charAt(i)));
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkCompactAlphabet() {
+        checkAlphabet(new Alphabet("QWERTYUIOPASDFGHJKLZXCVBNM0123"),
+                      "QWERTYUIOPASDFGHJKLZXCVBNM0123", "456789abc*(");
+    }
+
+    @Test
+    public void checkSparseAlphabet() {
+        String chars = "A\u00E9\u0416\u4E2D\u6587\uAC00\uFFEF.";
+        checkAlphabet(new Alphabet(chars), chars, "BZ\u0417\u4E2E\uFFEE");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkDuplicate() {
+        new Alphabet("ABCA");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkNotInAlphabet() {
+        new Alphabet("A\u4E2D").toInt('B');
+    }
+
+}
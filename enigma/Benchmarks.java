@@ -0,0 +1,360 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/** Microbenchmarks for the enigma package: Permutation.permute/invert,
+ *  Rotor.convertForward/convertBackward, Machine.convert(int),
+ *  Machine.convert(String) and Main's end-to-end pipeline, over several
+ *  alphabet sizes, rotor counts and message lengths.  Each benchmark is
+ *  warmed up and then timed over several iterations; the median rate is
+ *  reported.  Usage:
+ *
+ *      java enigma.Benchmarks [FILTER]
+ *
+ *  runs the benchmarks whose names contain FILTER (all by default).  See
+ *  benchmarks.txt for a baseline.
+ *  @author Jacky Tian
+ */
+public final class Benchmarks {
+
+    /** Not instantiable. */
+    private Benchmarks() {
+    }
+
+    /** Run the benchmarks selected by ARGS (see the class comment). */
+    public static void main(String... args) throws IOException {
+        _filter = args.length > 0 ? args[0] : "";
+        System.out.printf("%-40s %14s %14s%n", "benchmark", "ns/op", "ops/s");
+
+        for (int n : ALPHABET_SIZES) {
+            Permutation perm = randomPermutation(alphabet(n));
+            int[] wrap = wrap(n);
+            bench("permutation.permute/n=" + n, (k) -> {
+                int x = 0, j = 0;
+                for (int i = 0; i < k; i += 1) {
+                    j = j + 1 == n ? 0 : j + 1;
+                    x = perm.permute(wrap[x + j]);
+                }
+                return x;
+            });
+            bench("permutation.invert/n=" + n, (k) -> {
+                int x = 0, j = 0;
+                for (int i = 0; i < k; i += 1) {
+                    j = j + 1 == n ? 0 : j + 1;
+                    x = perm.invert(wrap[x + j]);
+                }
+                return x;
+            });
+        }
+
+        for (int n : ALPHABET_SIZES) {
+            Rotor rotor = new MovingRotor("R", randomPermutation(alphabet(n)),
+                                          "");
+            int[] wrap = wrap(n);
+            bench("rotor.convertForward/n=" + n, (k) -> {
+                int x = 0, j = 0;
+                for (int i = 0; i < k; i += 1) {
+                    j = j + 1 == n ? 0 : j + 1;
+                    if (j == 0) {
+                        rotor.advance();
+                    }
+                    x = rotor.convertForward(wrap[x + j]);
+                }
+                return x;
+            });
+            bench("rotor.convertBackward/n=" + n, (k) -> {
+                int x = 0, j = 0;
+                for (int i = 0; i < k; i += 1) {
+                    j = j + 1 == n ? 0 : j + 1;
+                    if (j == 0) {
+                        rotor.advance();
+                    }
+                    x = rotor.convertBackward(wrap[x + j]);
+                }
+                return x;
+            });
+        }
+
+        for (int n : ALPHABET_SIZES) {
+            for (int slots : ROTOR_COUNTS) {
+                Machine machine = randomMachine(n, slots, slots - 2);
+                int[] wrap = wrap(n);
+                bench("machine.convert(int)/n=" + n + ",rotors=" + slots,
+                      (k) -> {
+                        int x = 0, j = 0;
+                        for (int i = 0; i < k; i += 1) {
+                            j = j + 1 == n ? 0 : j + 1;
+                            x = machine.convert(wrap[x + j]);
+                        }
+                        return x;
+                    });
+            }
+        }
+
+        Machine standard = randomMachine(26, 5, 3);
+        for (int length : MESSAGE_LENGTHS) {
+            String msg = randomMessage(standard.alphabet(), length);
+            bench("machine.convert(String)/length=" + length, length,
+                  (k) -> {
+                    int x = 0;
+                    for (int i = 0; i < k; i += length) {
+                        x += standard.convert(msg).charAt(0);
+                    }
+                    return x;
+                });
+        }
+
+        benchMain("main/scanner", new String[0]);
+        benchMain("main/stream", new String[] { "--stream" });
+        benchMain("main/cache", new String[] { "--cache=16" });
+    }
+
+    /** A benchmarked operation. */
+    interface Body {
+        /** Perform about OPS operations, returning a value that depends on
+         *  all of them. */
+        long run(long ops);
+    }
+
+    /** Run and report the benchmark NAME, whose BODY performs one
+     *  operation per count. */
+    private static void bench(String name, Body body) {
+        bench(name, 1, body);
+    }
+
+    /** Run and report the benchmark NAME, where BODY performs operations
+     *  in batches of GRAIN. */
+    private static void bench(String name, long grain, Body body) {
+        if (!name.contains(_filter)) {
+            return;
+        }
+        long ops = grain;
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < WARMUP_NANOS) {
+            _sink += body.run(ops);
+            ops = Math.min(ops * 2, MAX_OPS);
+        }
+        double[] rates = new double[ITERATIONS];
+        for (int it = 0; it < ITERATIONS; it += 1) {
+            long count = 0;
+            long t0 = System.nanoTime(), elapsed;
+            do {
+                _sink += body.run(ops);
+                count += Math.max(ops, grain);
+                elapsed = System.nanoTime() - t0;
+            } while (elapsed < ITERATION_NANOS);
+            rates[it] = count * 1e9 / elapsed;
+        }
+        Arrays.sort(rates);
+        double rate = rates[ITERATIONS / 2];
+        System.out.printf("%-40s %14.2f %14.0f%n", name, 1e9 / rate, rate);
+    }
+
+    /** Report the end-to-end rate, in message characters per second, of
+     *  Main run with OPTIONS on a standard configuration and a generated
+     *  input file of blocks with repeated settings lines.  NAME names the
+     *  benchmark. */
+    private static void benchMain(String name, String[] options)
+        throws IOException {
+        if (!name.contains(_filter)) {
+            return;
+        }
+        Path dir = Files.createTempDirectory("enigma-bench");
+        Path config = dir.resolve("config"), input = dir.resolve("input"),
+            output = dir.resolve("output");
+        Files.write(config, STANDARD_CONFIG.getBytes());
+        long chars = writeInput(input);
+        String[] args = new String[options.length + 3];
+        System.arraycopy(options, 0, args, 0, options.length);
+        args[options.length] = config.toString();
+        args[options.length + 1] = input.toString();
+        args[options.length + 2] = output.toString();
+        bench(name + "(chars)", chars, (k) -> {
+            for (long i = 0; i < k; i += chars) {
+                Main.main(args);
+            }
+            return k;
+        });
+        for (Path p : new Path[] { config, input, output, dir }) {
+            Files.deleteIfExists(p);
+        }
+    }
+
+    /** Write an input file for Main to FILE: MAIN_BLOCKS blocks drawn from
+     *  a few settings lines, each with a few lines of message.  Returns the
+     *  number of message characters. */
+    private static long writeInput(Path file) throws IOException {
+        String[] settings = {
+            "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* C GAMMA I II III ZZZZ",
+            "* B BETA VIII VI VII QRST (AZ)",
+        };
+        Random random = new Random(SEED);
+        long chars = 0;
+        try (PrintStream out = new PrintStream(file.toFile())) {
+            for (int b = 0; b < MAIN_BLOCKS; b += 1) {
+                out.println(settings[random.nextInt(settings.length)]);
+                for (int l = 0; l < 4; l += 1) {
+                    String line =
+                        randomMessage(new UpperCaseAlphabet(), MAIN_LINE);
+                    out.println(line);
+                    chars += line.length();
+                }
+            }
+        }
+        return chars;
+    }
+
+    /** Return an array whose element I is I modulo N, for 0 <= I < 2N,
+     *  so that benchmarks can combine two indices into a third without
+     *  division and without assuming that N is a power of two. */
+    private static int[] wrap(int n) {
+        int[] result = new int[2 * n];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = i % n;
+        }
+        return result;
+    }
+
+    /** Return an alphabet of N characters. */
+    private static Alphabet alphabet(int n) {
+        if (n == 26) {
+            return new UpperCaseAlphabet();
+        }
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            chars.append((char) ('\u0100' + i));
+        }
+        return new Alphabet(chars.toString());
+    }
+
+    /** Return a random permutation of the indices of ALPHA. */
+    private static Permutation randomPermutation(Alphabet alpha) {
+        int[] table = new int[alpha.size()];
+        for (int i = 0; i < table.length; i += 1) {
+            table[i] = i;
+        }
+        for (int i = table.length - 1; i > 0; i -= 1) {
+            int j = _random.nextInt(i + 1);
+            int t = table[i];
+            table[i] = table[j];
+            table[j] = t;
+        }
+        return new Permutation(table, alpha);
+    }
+
+    /** Return a random reflecting permutation (one made of pairs) of the
+     *  indices of ALPHA, whose size must be even. */
+    private static Permutation randomReflection(Alphabet alpha) {
+        int[] order = randomPermutation(alpha).table();
+        int[] table = new int[order.length];
+        for (int i = 0; i < order.length; i += 2) {
+            table[order[i]] = order[i + 1];
+            table[order[i + 1]] = order[i];
+        }
+        return new Permutation(table, alpha);
+    }
+
+    /** Return a machine with an alphabet of N characters, SLOTS random
+     *  rotors of which PAWLS move, and a random plugboard, set up at
+     *  random positions. */
+    private static Machine randomMachine(int n, int slots, int pawls) {
+        Alphabet alpha = alphabet(n);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[slots];
+        rotors.add(new Reflector("R0", randomReflection(alpha)));
+        names[0] = "R0";
+        for (int i = 1; i < slots; i += 1) {
+            names[i] = "R" + i;
+            if (i < slots - pawls) {
+                rotors.add(new FixedRotor(names[i], randomPermutation(alpha)));
+            } else {
+                String notch = "" + alpha.toChar(_random.nextInt(n));
+                rotors.add(new MovingRotor(names[i], randomPermutation(alpha),
+                                           notch));
+            }
+        }
+        Machine machine = new Machine(alpha, slots, pawls, rotors);
+        machine.insertRotors(names);
+        StringBuilder posns = new StringBuilder();
+        for (int i = 1; i < slots; i += 1) {
+            posns.append(alpha.toChar(_random.nextInt(n)));
+        }
+        machine.setRotors(posns.toString());
+        machine.setPlugboard(randomReflection(alpha));
+        return machine;
+    }
+
+    /** Return a random message of LENGTH characters of ALPHA. */
+    private static String randomMessage(Alphabet alpha, int length) {
+        char[] msg = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            msg[i] = alpha.toChar(_random.nextInt(alpha.size()));
+        }
+        return new String(msg);
+    }
+
+    /** Alphabet sizes benchmarked (powers of two but 26). */
+    private static final int[] ALPHABET_SIZES = { 26, 64, 256 };
+
+    /** Numbers of rotor slots benchmarked. */
+    private static final int[] ROTOR_COUNTS = { 3, 5, 8 };
+
+    /** Message lengths benchmarked. */
+    private static final int[] MESSAGE_LENGTHS = { 100, 10_000, 1_000_000 };
+
+    /** Number of settings blocks in the end-to-end input. */
+    private static final int MAIN_BLOCKS = 2000;
+
+    /** Length of each message line in the end-to-end input. */
+    private static final int MAIN_LINE = 500;
+
+    /** Length of warmup, in nanoseconds. */
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+
+    /** Minimum length of each timed iteration, in nanoseconds. */
+    private static final long ITERATION_NANOS = 500_000_000L;
+
+    /** Number of timed iterations. */
+    private static final int ITERATIONS = 5;
+
+    /** Largest batch of operations per call of a benchmark body. */
+    private static final long MAX_OPS = 1 << 20;
+
+    /** Seed for random configurations and messages. */
+    private static final long SEED = 61;
+
+    /** Source of random configurations and messages. */
+    private static Random _random = new Random(SEED);
+
+    /** Accumulates benchmark results so that they are not optimized
+     *  away. */
+    private static volatile long _sink;
+
+    /** Only benchmarks whose names contain this string are run. */
+    private static String _filter;
+
+    /** The standard configuration, used for end-to-end runs. */
+    private static final String STANDARD_CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n5 3\n"
+        + "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + "II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+        + "V MZ (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+        + "VI MZM (AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)\n"
+        + "VII MZM (ANOUPFRIMBZTLWKSVEGCJYDHXQ)\n"
+        + "VIII MZM (AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)\n"
+        + "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+        + "Gamma N (AFNIRLBSQWVXGUZDKMTPCOYJHE)\n"
+        + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+        + "  (RX) (SZ) (TV)\n"
+        + "C R (AR) (BD) (CO) (EJ) (FN) (GT) (HK) (IV) (LM) (PW)\n"
+        + "  (QZ) (SX) (UY)\n";
+}
@@ -0,0 +1,550 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A bombe: a search for the rotor orders and initial settings under which
+ *  a known stretch of plaintext (the crib) enciphers to a given stretch of
+ *  ciphertext, whatever the plugboard.
+ *
+ *  The crib and ciphertext define a menu: a graph whose vertices are
+ *  characters and which has an edge between the crib and ciphertext
+ *  characters at each position K, labelled with the permutation S_K that
+ *  the rotors perform there.  With plugboard P, the machine maps crib
+ *  character A to ciphertext character B iff S_K(P(A)) = P(B), so a guess
+ *  at P of the most connected character (the test character) determines
+ *  P of every character connected to it.  A guess is rejected as soon as
+ *  two of its consequences conflict, and the positions at which every
+ *  guess is rejected are eliminated.  Before that, each loop in the menu
+ *  through the test character requires its guess to be a fixed point of
+ *  the composite permutation around the loop, which eliminates most
+ *  positions after a few table lookups.
+ *
+ *  The search runs over every arrangement of the available rotors and
+ *  every initial setting, split into tasks by rotor order and the setting
+ *  of the leftmost rotor, with the rightmost rotor's setting varying
+ *  fastest.  Consecutive positions then usually differ by a single step of
+ *  the rightmost rotor, and share all but one of their crib permutations.
+ *  Each task reuses its machines and arrays, so testing a position
+ *  allocates nothing.
+ *  @author Jacky Tian
+ */
+class Bombe {
+
+    /** A bombe that searches for the settings of machines like MACHINE
+     *  (whose rotors and plugboard are ignored) under which CRIB enciphers
+     *  to the characters of CIPHERTEXT starting at OFFSET.  No character
+     *  of CRIB may coincide with the ciphertext character it enciphers to,
+     *  since no Enigma encipherment maps a character to itself. */
+    Bombe(Machine machine, String ciphertext, String crib, int offset) {
+        _template = machine;
+        _alphabet = machine.alphabet();
+        _offset = offset;
+        _length = crib.length();
+        if (_length == 0) {
+            throw error("empty crib");
+        }
+        if (offset < 0 || offset + _length > ciphertext.length()) {
+            throw error("crib does not fit in ciphertext at %d", offset);
+        }
+        if (!fits(ciphertext, crib, offset)) {
+            throw error("crib enciphers a character to itself at %d",
+                        offset);
+        }
+        int n = _alphabet.size();
+        int[] from = new int[_length], to = new int[_length];
+        _edgeStart = new int[n + 1];
+        for (int k = 0; k < _length; k += 1) {
+            from[k] = index(crib.charAt(k));
+            to[k] = index(ciphertext.charAt(offset + k));
+            _edgeStart[from[k] + 1] += 1;
+            _edgeStart[to[k] + 1] += 1;
+        }
+        _test = 0;
+        for (int c = 0; c < n; c += 1) {
+            if (_edgeStart[c + 1] > _edgeStart[_test + 1]) {
+                _test = c;
+            }
+            _edgeStart[c + 1] += _edgeStart[c];
+        }
+        _edgeTo = new int[2 * _length];
+        _edgeStep = new int[2 * _length];
+        int[] next = Arrays.copyOf(_edgeStart, n);
+        for (int k = 0; k < _length; k += 1) {
+            addEdge(next, from[k], to[k], k);
+            addEdge(next, to[k], from[k], k);
+        }
+        _loops = findLoops();
+    }
+
+    /** Return true iff CRIB may be placed against the characters of
+     *  CIPHERTEXT starting at OFFSET: it fits, and no character of CRIB
+     *  coincides with its counterpart. */
+    static boolean fits(String ciphertext, String crib, int offset) {
+        if (offset < 0 || offset + crib.length() > ciphertext.length()) {
+            return false;
+        }
+        for (int k = 0; k < crib.length(); k += 1) {
+            if (crib.charAt(k) == ciphertext.charAt(offset + k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the offsets in CIPHERTEXT at which CRIB may be placed (see
+     *  fits). */
+    static List<Integer> alignments(String ciphertext, String crib) {
+        ArrayList<Integer> result = new ArrayList<>();
+        for (int offset = 0; offset + crib.length() <= ciphertext.length();
+             offset += 1) {
+            if (fits(ciphertext, crib, offset)) {
+                result.add(offset);
+            }
+        }
+        return result;
+    }
+
+    /** Return the index of C in my alphabet. */
+    private int index(char c) {
+        if (!_alphabet.contains(c)) {
+            throw error("character not in alphabet: %c", c);
+        }
+        return _alphabet.toInt(c);
+    }
+
+    /** Add an edge from A to B for crib position K, where NEXT[A] is the
+     *  index of the next free edge of A. */
+    private void addEdge(int[] next, int a, int b, int k) {
+        _edgeTo[next[a]] = b;
+        _edgeStep[next[a]] = k;
+        next[a] += 1;
+    }
+
+    /** Return the loops of the menu through the test character, as the
+     *  crib positions whose permutations are applied, in order, on going
+     *  around each loop, shortest first.  There is one loop for each edge
+     *  of the test character's component outside a breadth-first spanning
+     *  tree. */
+    private int[][] findLoops() {
+        int n = _alphabet.size();
+        int[] parent = new int[n], parentStep = new int[n];
+        Arrays.fill(parent, -1);
+        parent[_test] = _test;
+        parentStep[_test] = -1;
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        queue[tail++] = _test;
+        boolean[] treeEdge = new boolean[_length];
+        ArrayList<int[]> loops = new ArrayList<>();
+        boolean[] seen = new boolean[_length];
+        while (head < tail) {
+            int a = queue[head++];
+            for (int e = _edgeStart[a]; e < _edgeStart[a + 1]; e += 1) {
+                int b = _edgeTo[e], k = _edgeStep[e];
+                if (parent[b] < 0) {
+                    parent[b] = a;
+                    parentStep[b] = k;
+                    treeEdge[k] = true;
+                    queue[tail++] = b;
+                }
+            }
+        }
+        for (int a = 0; a < n; a += 1) {
+            if (parent[a] < 0) {
+                continue;
+            }
+            for (int e = _edgeStart[a]; e < _edgeStart[a + 1]; e += 1) {
+                int k = _edgeStep[e];
+                if (treeEdge[k] || seen[k]) {
+                    continue;
+                }
+                seen[k] = true;
+                ArrayList<Integer> steps = new ArrayList<>();
+                pathFrom(a, parent, parentStep, steps);
+                int split = steps.size();
+                steps.add(k);
+                pathFrom(_edgeTo[e], parent, parentStep, steps);
+                int[] loop = new int[steps.size()];
+                for (int i = 0; i < split; i += 1) {
+                    loop[i] = steps.get(split - 1 - i);
+                }
+                for (int i = split; i < loop.length; i += 1) {
+                    loop[i] = steps.get(i);
+                }
+                loops.add(loop);
+            }
+        }
+        loops.sort((x, y) -> Integer.compare(x.length, y.length));
+        return loops.toArray(new int[0][]);
+    }
+
+    /** Append to STEPS the crib positions on the spanning-tree path from A
+     *  to the test character, given the PARENT and PARENTSTEP of each
+     *  character in the tree. */
+    private void pathFrom(int a, int[] parent, int[] parentStep,
+                          List<Integer> steps) {
+        for (; a != _test; a = parent[a]) {
+            steps.add(parentStep[a]);
+        }
+    }
+
+    /** Return the character tested at each position. */
+    char testCharacter() {
+        return _alphabet.toChar(_test);
+    }
+
+    /** Return the number of loops through the test character used for
+     *  pruning. */
+    int numLoops() {
+        return _loops.length;
+    }
+
+    /** Return every arrangement of the available rotors of my machine
+     *  that can be inserted into it (see Machine.rotorOrders). */
+    List<String[]> rotorOrders() {
+        return _template.rotorOrders();
+    }
+
+    /** Search all rotor orders and settings, using all available
+     *  processors, and return the stops found. */
+    List<Stop> search() {
+        ForkJoinPool pool =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            return search(rotorOrders(), pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Search the rotor orders ORDERS (each naming the rotors of every
+     *  slot, reflector first) at every setting, running tasks in POOL, and
+     *  return the stops found, ordered as ORDERS and then by setting. */
+    List<Stop> search(List<String[]> orders, ForkJoinPool pool) {
+        ConcurrentLinkedQueue<Stop> stops = new ConcurrentLinkedQueue<>();
+        ArrayList<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i += 1) {
+            for (int first = 0; first < _alphabet.size(); first += 1) {
+                tasks.add(new Search(orders.get(i), i, first, stops));
+            }
+        }
+        try {
+            for (Future<Void> task : pool.invokeAll(tasks)) {
+                task.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("bombe interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        }
+        ArrayList<Stop> result = new ArrayList<>(stops);
+        result.sort((x, y) -> x._order != y._order
+                    ? Integer.compare(x._order, y._order)
+                    : x._setting.compareTo(y._setting));
+        return result;
+    }
+
+    /** Return the total number of positions tested so far. */
+    long positions() {
+        return _positions.sum();
+    }
+
+    /** A candidate setting found by the bombe: a rotor order, an initial
+     *  setting, and the plugboard pairs deduced for it.  Plugboard pairs
+     *  not involving characters of the menu remain unknown. */
+    static class Stop {
+
+        /** A stop at ROTORS, the ORDERth of the orders searched, at
+         *  SETTING, with deduced plugboard cycles PLUGBOARD. */
+        Stop(String[] rotors, int order, String setting, String plugboard) {
+            _rotors = rotors;
+            _order = order;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my initial setting. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my deduced plugboard, in cycle notation. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return me as a settings line. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboard.isEmpty() ? line : line + " " + _plugboard;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+
+        /** Index of my rotor order among those searched. */
+        private final int _order;
+
+        /** Initial setting. */
+        private final String _setting;
+
+        /** Deduced plugboard cycles. */
+        private final String _plugboard;
+    }
+
+    /** The search of one rotor order with one setting of the leftmost
+     *  rotor, over all settings of the others. */
+    private class Search implements Callable<Void> {
+
+        /** A search of rotor order ROTORS, the ORDERth searched, with the
+         *  leftmost rotor at FIRST, adding stops to STOPS. */
+        Search(String[] rotors, int order, int first,
+               ConcurrentLinkedQueue<Stop> stops) {
+            _rotors = rotors;
+            _order = order;
+            _first = first;
+            _stops = stops;
+        }
+
+        @Override
+        public Void call() {
+            int n = _alphabet.size();
+            _head = _template.copy();
+            _head.insertRotors(_rotors);
+            _tail = _template.copy();
+            _tail.setPlugboard(new Permutation("", _alphabet));
+            _tail.insertRotors(_rotors);
+            _settings = new int[_template.numRotors() - 1];
+            _settings[0] = _first;
+            _tables = new int[_length * n];
+            _candidates = new int[n];
+            _plugs = new int[n];
+            _pending = new int[n];
+            int last = _settings.length - 1;
+            boolean slide = false;
+            long count = 0;
+            while (true) {
+                if (slide) {
+                    _head.advance();
+                    _tail.tabulate(1, _tables, _base * n);
+                    _base = _base + 1 == _length ? 0 : _base + 1;
+                } else {
+                    _head.setRotors(_settings);
+                    _tail.setRotors(_settings);
+                    for (int k = 0; k < _offset; k += 1) {
+                        _tail.advance();
+                    }
+                    _tail.tabulate(_length, _tables, 0);
+                    _base = 0;
+                }
+                testPosition();
+                count += 1;
+                slide = _settings[last] + 1 < n && _head.numPawls() > 0
+                    && !_head.atTurnover();
+                int i = last;
+                while (i > 0 && ++_settings[i] == n) {
+                    _settings[i] = 0;
+                    i -= 1;
+                }
+                if (i == 0) {
+                    break;
+                }
+            }
+            _positions.add(count);
+            return null;
+        }
+
+        /** Return the index in _tables of the table for crib position
+         *  K. */
+        private int row(int k) {
+            int r = _base + k;
+            return (r >= _length ? r - _length : r) * _alphabet.size();
+        }
+
+        /** Test the position given by _settings, recording a stop for
+         *  each consistent plugboard guess at the test character. */
+        private void testPosition() {
+            int n = _alphabet.size();
+            int count = 0;
+            for (int x = 0; x < n; x += 1) {
+                _candidates[count++] = x;
+            }
+            for (int[] loop : _loops) {
+                int kept = 0;
+                for (int i = 0; i < count; i += 1) {
+                    int x = _candidates[i], y = x;
+                    for (int k : loop) {
+                        y = _tables[row(k) + y];
+                    }
+                    if (y == x) {
+                        _candidates[kept++] = x;
+                    }
+                }
+                count = kept;
+                if (count == 0) {
+                    return;
+                }
+            }
+            for (int i = 0; i < count; i += 1) {
+                if (consistent(_candidates[i])) {
+                    _stops.add(stop());
+                }
+            }
+        }
+
+        /** Return true iff guessing that the plugboard maps the test
+         *  character to X leads to no contradiction, leaving the deduced
+         *  plugboard in _plugs (-1 where unknown). */
+        private boolean consistent(int x) {
+            Arrays.fill(_plugs, -1);
+            _top = 0;
+            if (!plug(_test, x)) {
+                return false;
+            }
+            while (_top > 0) {
+                int a = _pending[--_top];
+                int pa = _plugs[a];
+                for (int e = _edgeStart[a]; e < _edgeStart[a + 1]; e += 1) {
+                    if (!plug(_edgeTo[e], _tables[row(_edgeStep[e]) + pa])) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Record that the plugboard swaps A and B, queueing both for
+         *  propagation along the menu.  Returns false iff this contradicts
+         *  what is already known. */
+        private boolean plug(int a, int b) {
+            if (_plugs[a] == b) {
+                return true;
+            }
+            if (_plugs[a] >= 0 || _plugs[b] >= 0) {
+                return false;
+            }
+            _plugs[a] = b;
+            _pending[_top++] = a;
+            if (a != b) {
+                _plugs[b] = a;
+                _pending[_top++] = b;
+            }
+            return true;
+        }
+
+        /** Return a stop for the current position with plugboard
+         *  _plugs. */
+        private Stop stop() {
+            StringBuilder setting = new StringBuilder();
+            for (int posn : _settings) {
+                setting.append(_alphabet.toChar(posn));
+            }
+            StringBuilder plugboard = new StringBuilder();
+            for (int a = 0; a < _plugs.length; a += 1) {
+                if (_plugs[a] > a) {
+                    if (plugboard.length() > 0) {
+                        plugboard.append(' ');
+                    }
+                    plugboard.append('(').append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_plugs[a])).append(')');
+                }
+            }
+            return new Stop(_rotors, _order, setting.toString(),
+                            plugboard.toString());
+        }
+
+        /** Rotor order searched. */
+        private final String[] _rotors;
+
+        /** Index of _rotors among the orders searched. */
+        private final int _order;
+
+        /** Setting of the leftmost rotor. */
+        private final int _first;
+
+        /** Where stops are collected. */
+        private final ConcurrentLinkedQueue<Stop> _stops;
+
+        /** Machine at the position being tested. */
+        private Machine _head;
+
+        /** Machine at the last crib position of the position being
+         *  tested, without plugboard. */
+        private Machine _tail;
+
+        /** Current rotor settings, leftmost (slot 1) first. */
+        private int[] _settings;
+
+        /** Permutations at each crib position (see Machine.tabulate), as
+         *  a ring of tables starting at table _base.  When the next
+         *  position is the one the head machine steps to, the tables
+         *  slide along by one, so only one new table is needed. */
+        private int[] _tables;
+
+        /** Index of the table for crib position 0 in _tables. */
+        private int _base;
+
+        /** Plugboard guesses at the test character still possible. */
+        private int[] _candidates;
+
+        /** Deduced plugboard partner of each character, or -1. */
+        private int[] _plugs;
+
+        /** Characters whose menu edges remain to be propagated. */
+        private int[] _pending;
+
+        /** Number of entries in _pending. */
+        private int _top;
+    }
+
+    /** Machine whose rotors are searched. */
+    private final Machine _template;
+
+    /** Alphabet of _template. */
+    private final Alphabet _alphabet;
+
+    /** Position of the crib in the ciphertext. */
+    private final int _offset;
+
+    /** Length of the crib. */
+    private final int _length;
+
+    /** The menu character whose plugboard partner is guessed. */
+    private int _test;
+
+    /** Edges of the menu leaving character C are _edgeStart[C] ..
+     *  _edgeStart[C + 1] - 1. */
+    private final int[] _edgeStart;
+
+    /** Character at the other end of each edge. */
+    private final int[] _edgeTo;
+
+    /** Crib position of each edge. */
+    private final int[] _edgeStep;
+
+    /** Loops through the test character (see findLoops). */
+    private final int[][] _loops;
+
+    /** Number of positions tested. */
+    private final LongAdder _positions = new LongAdder();
+}
@@ -0,0 +1,88 @@
+package enigma;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Jacky Tian
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        "WETTERVORHERSAGEBISKAYAKEINEBESONDERENVORKOMMNISSE";
+
+    /** Return a four-slot machine using ALL_ROTORS, set to B III IV I at
+     *  AXL with a few plugboard pairs. */
+    private Machine machine() {
+        Machine machine = new Machine(UPPER, 4, 3, ALL_ROTORS);
+        machine.insertRotors(new String[] {"B", "III", "IV", "I"});
+        machine.setRotors("AXL");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        return machine;
+    }
+
+    @Test
+    public void findsSettings() {
+        String cipher = machine().convert(PLAIN);
+        Bombe bombe = new Bombe(machine(), cipher, PLAIN.substring(0, 30), 0);
+        assertEquals(24, bombe.rotorOrders().size());
+        List<Bombe.Stop> stops =
+            bombe.search(bombe.rotorOrders(), new ForkJoinPool(2));
+        assertEquals(24 * 26 * 26 * 26, bombe.positions());
+        boolean found = false;
+        for (Bombe.Stop stop : stops) {
+            if (stop.toString().startsWith("* B III IV I AXL")) {
+                found = true;
+                for (String pair : stop.plugboard().split(" ")) {
+                    assertTrue("wrong pair " + pair,
+                               "(EX) (HQ) (IP) (RT) (BY)".contains(pair)
+                               || pair.charAt(1) == pair.charAt(2));
+                }
+            }
+        }
+        assertTrue("true setting not found", found);
+        assertTrue("too many stops: " + stops.size(), stops.size() < 50);
+    }
+
+    @Test
+    public void findsCribLater() {
+        Machine machine = machine();
+        String cipher = machine.convert(PLAIN);
+        List<Integer> offsets =
+            Bombe.alignments(cipher, "KEINEBESONDERENVORKOMMNISSE");
+        assertTrue(offsets.contains(PLAIN.indexOf("KEINE")));
+        Bombe bombe = new Bombe(machine(), cipher,
+                                "KEINEBESONDERENVORKOMMNISSE",
+                                PLAIN.indexOf("KEINE"));
+        List<String[]> orders = List.of(new String[] {"B", "III", "IV", "I"},
+                                        new String[] {"B", "I", "II", "III"});
+        boolean found = false;
+        for (Bombe.Stop stop : bombe.search(orders, new ForkJoinPool(1))) {
+            found |= stop.setting().equals("AXL");
+        }
+        assertTrue("true setting not found", found);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsSelfEncipherment() {
+        new Bombe(machine(), "ABCDE", "XBX", 0);
+    }
+
+    @Test
+    public void alignments() {
+        assertEquals(List.of(1, 2), Bombe.alignments("ABCAB", "AB"));
+        assertFalse(Bombe.fits("ABC", "ABCD", 0));
+    }
+}
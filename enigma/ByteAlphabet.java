@@ -0,0 +1,59 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The alphabet of the 256 byte values, for enciphering binary data:
+ *  character C, for 0 <= C < 256, stands for the (unsigned) byte value C.
+ *  @author Jacky Tian
+ */
+class ByteAlphabet extends Alphabet {
+
+    /** The size of my alphabet. */
+    static final int SIZE = 256;
+
+    /** A new alphabet containing the characters 0 .. 255 in order. */
+    ByteAlphabet() {
+        super(characters());
+    }
+
+    /** Return the string of characters 0 .. SIZE - 1. */
+    private static String characters() {
+        char[] chars = new char[SIZE];
+        for (int i = 0; i < SIZE; i += 1) {
+            chars[i] = (char) i;
+        }
+        return new String(chars);
+    }
+
+    /** Returns the size of the alphabet. */
+    @Override
+    final int size() {
+        return SIZE;
+    }
+
+    /** Returns true if C is in this alphabet. */
+    @Override
+    final boolean contains(char c) {
+        return c < SIZE;
+    }
+
+    /** Returns character number INDEX in the alphabet, where
+     *  0 <= INDEX < size(). */
+    @Override
+    final char toChar(int index) {
+        if (index < 0 || index >= SIZE) {
+            throw error("character index out of range");
+        }
+        return (char) index;
+    }
+
+    /** Returns the index of character C, which must be in the alphabet. */
+    @Override
+    final int toInt(char c) {
+        if (c >= SIZE) {
+            throw error("character not in alphabet");
+        }
+        return c;
+    }
+
+}
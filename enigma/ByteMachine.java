@@ -0,0 +1,232 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** An Enigma machine for binary data.  It is made from a Machine whose
+ *  alphabet has 256 characters (normally a ByteAlphabet), and converts
+ *  each byte value B exactly as that machine converts character number B,
+ *  with the same rotors, stepping, reflector and plugboard.
+ *
+ *  Between turnovers only the rightmost rotor moves, so the rest of the
+ *  rotors form one fixed permutation (Machine.inner), held as a byte
+ *  table.  The plugboard is folded into byte tables for the rightmost
+ *  rotor at each of its settings, so converting a byte takes three table
+ *  lookups.  At a turnover the machine itself steps and the inner table
+ *  is rebuilt from the second rotor from the right, which is also
+ *  tabulated for each of its settings, and the rotors to its left
+ *  (Machine.outer), which seldom move.
+ *  @author Jacky Tian
+ */
+class ByteMachine {
+
+    /** A byte machine in the state of MACHINE, whose alphabet must have
+     *  256 characters and whose rotors must be inserted.  MACHINE itself is
+     *  not changed. */
+    ByteMachine(Machine machine) {
+        if (machine.alphabet().size() != SIZE) {
+            throw error("byte machines need an alphabet of %d characters",
+                        SIZE);
+        }
+        _machine = machine.copy();
+        _fast = _machine._rotors[_machine.numRotors() - 1];
+        if (_fast == null) {
+            throw error("rotors not inserted");
+        }
+        int[] plugboard = _machine.plugboard().table();
+        int setting = _fast.setting();
+        _forward = new byte[SIZE * SIZE];
+        _backward = new byte[SIZE * SIZE];
+        for (int s = 0; s < SIZE; s += 1) {
+            _fast.set(s);
+            for (int x = 0; x < SIZE; x += 1) {
+                _forward[s << 8 | x] =
+                    (byte) _fast.convertForward(plugboard[x]);
+                _backward[s << 8 | x] =
+                    (byte) plugboard[_fast.convertBackward(x)];
+            }
+        }
+        _fast.set(setting);
+        if (_machine.numPawls() > 1) {
+            _middle = _machine._rotors[_machine.numRotors() - 2];
+            _middleForward = new byte[SIZE * SIZE];
+            _middleBackward = new byte[SIZE * SIZE];
+            setting = _middle.setting();
+            for (int s = 0; s < SIZE; s += 1) {
+                _middle.set(s);
+                for (int x = 0; x < SIZE; x += 1) {
+                    _middleForward[s << 8 | x] =
+                        (byte) _middle.convertForward(x);
+                    _middleBackward[s << 8 | x] =
+                        (byte) _middle.convertBackward(x);
+                }
+            }
+            _middle.set(setting);
+        } else {
+            _middle = null;
+            _middleForward = _middleBackward = null;
+        }
+        _inner = new byte[SIZE];
+        loadInner();
+    }
+
+    /** Set _inner to the machine's inner permutation. */
+    private void loadInner() {
+        byte[] inner = _inner;
+        if (_middle == null) {
+            int[] table = _machine.inner();
+            for (int x = 0; x < SIZE; x += 1) {
+                inner[x] = (byte) table[x];
+            }
+        } else {
+            byte[] forward = _middleForward, backward = _middleBackward;
+            int[] outer = _machine.outer();
+            int row = _middle.setting() << 8;
+            for (int x = 0; x < SIZE; x += 1) {
+                inner[x] = backward[row | outer[forward[row | x] & 0xff]];
+            }
+        }
+    }
+
+    /** Convert the LEN bytes of IN starting at INOFF, storing the results
+     *  in OUT starting at OUTOFF and updating the state of the rotors
+     *  accordingly.  IN and OUT may be the same array. */
+    void convert(byte[] in, int inOff, byte[] out, int outOff, int len) {
+        if (inOff < 0 || outOff < 0 || len < 0
+            || inOff + len > in.length || outOff + len > out.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        int pawls = _machine.numPawls();
+        for (int done = 0; done < len;) {
+            int run;
+            if (pawls == 0) {
+                run = len - done;
+                lookUp(in, inOff + done, out, outOff + done, run,
+                       _fast.setting(), 0);
+            } else if (_machine.atTurnover()) {
+                _machine.advance();
+                loadInner();
+                run = 1;
+                lookUp(in, inOff + done, out, outOff + done, run,
+                       _fast.setting(), 0);
+            } else {
+                int toNotch = pawls > 1 ? _fast.stepsToNotch() : -1;
+                run = toNotch < 0 ? len - done : Math.min(len - done, toNotch);
+                int setting = _fast.setting();
+                lookUp(in, inOff + done, out, outOff + done, run, setting, 1);
+                _fast.set(setting + run);
+            }
+            done += run;
+        }
+    }
+
+    /** Convert the LEN bytes of IN starting at INOFF into OUT starting at
+     *  OUTOFF with the current inner permutation, where the rightmost
+     *  rotor starts at SETTING and is advanced by STEP before each
+     *  byte. */
+    private void lookUp(byte[] in, int inOff, byte[] out, int outOff,
+                        int len, int setting, int step) {
+        byte[] forward = _forward, backward = _backward, inner = _inner;
+        int row = setting << 8, delta = step << 8;
+        for (int k = 0; k < len; k += 1) {
+            row = (row + delta) & 0xff00;
+            int x = forward[row | in[inOff + k] & 0xff] & 0xff;
+            out[outOff + k] = backward[row | inner[x] & 0xff];
+        }
+    }
+
+    /** Convert as many of the remaining bytes of IN as fit in the
+     *  remaining space of OUT, advancing the positions of both buffers
+     *  and updating the state of the rotors accordingly. */
+    void convert(ByteBuffer in, ByteBuffer out) {
+        int len = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            convert(in.array(), in.arrayOffset() + in.position(),
+                    out.array(), out.arrayOffset() + out.position(), len);
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+            return;
+        }
+        byte[] chunk = new byte[Math.min(len, BUFFER_SIZE)];
+        for (int done = 0; done < len;) {
+            int n = Math.min(len - done, chunk.length);
+            in.get(chunk, 0, n);
+            convert(chunk, 0, chunk, 0, n);
+            out.put(chunk, 0, n);
+            done += n;
+        }
+    }
+
+    /** Convert all the bytes read from IN, writing the results to OUT, and
+     *  return the number of bytes converted. */
+    long convert(ReadableByteChannel in, WritableByteChannel out)
+        throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long total = 0;
+        while (in.read(buffer) >= 0) {
+            buffer.flip();
+            convert(buffer.array(), 0, buffer.array(), 0, buffer.limit());
+            total += buffer.limit();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            buffer.clear();
+        }
+        return total;
+    }
+
+    /** Convert the contents of file SOURCE into file TARGET, which is
+     *  created or replaced, and return the number of bytes converted. */
+    long convert(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source);
+             FileChannel out = FileChannel.open(
+                 target, StandardOpenOption.CREATE,
+                 StandardOpenOption.TRUNCATE_EXISTING,
+                 StandardOpenOption.WRITE)) {
+            return convert(in, out);
+        }
+    }
+
+    /** Number of byte values. */
+    static final int SIZE = ByteAlphabet.SIZE;
+
+    /** Size of the buffers used for channels. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** The machine whose rotors I use. */
+    private final Machine _machine;
+
+    /** The rightmost rotor of _machine. */
+    private final Rotor _fast;
+
+    /** Plugboard followed by the rightmost rotor at setting S maps byte X
+     *  to _forward[S << 8 | X]. */
+    private final byte[] _forward;
+
+    /** The rightmost rotor backwards at setting S followed by the
+     *  plugboard maps byte X to _backward[S << 8 | X]. */
+    private final byte[] _backward;
+
+    /** The second rotor from the right of _machine, if it moves, and
+     *  otherwise null. */
+    private final Rotor _middle;
+
+    /** _middle at setting S maps byte X to _middleForward[S << 8 | X], if
+     *  it moves. */
+    private final byte[] _middleForward;
+
+    /** _middle backwards at setting S maps byte X to
+     *  _middleBackward[S << 8 | X], if it moves. */
+    private final byte[] _middleBackward;
+
+    /** The permutation of all rotors but the rightmost (see
+     *  Machine.inner). */
+    private final byte[] _inner;
+}
@@ -0,0 +1,160 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ByteAlphabet and ByteMachine
+ *  classes.
+ *  @author Jacky Tian
+ */
+public class ByteMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** The byte alphabet. */
+    private static final ByteAlphabet BYTES = new ByteAlphabet();
+
+    /** Return a random permutation of the byte values from RANDOM, made of
+     *  pairs iff REFLECTING. */
+    private Permutation randomPermutation(Random random, boolean reflecting) {
+        int[] order = new int[BYTES.size()];
+        for (int i = 0; i < order.length; i += 1) {
+            order[i] = i;
+        }
+        for (int i = order.length - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        if (!reflecting) {
+            return new Permutation(order, BYTES);
+        }
+        int[] table = new int[order.length];
+        for (int i = 0; i < order.length; i += 2) {
+            table[order[i]] = order[i + 1];
+            table[order[i + 1]] = order[i];
+        }
+        return new Permutation(table, BYTES);
+    }
+
+    /** Return a byte machine with random rotors, set up at random from
+     *  SEED, with NUMROTORS slots and PAWLS pawls. */
+    private Machine machine(long seed, int numRotors, int pawls) {
+        Random random = new Random(seed);
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        for (int i = 0; i < numRotors; i += 1) {
+            names[i] = "R" + i;
+            if (i == 0) {
+                rotors.add(new Reflector(names[i],
+                                         randomPermutation(random, true)));
+            } else if (i < numRotors - pawls) {
+                rotors.add(new FixedRotor(names[i],
+                                          randomPermutation(random, false)));
+            } else {
+                String notches = "" + (char) random.nextInt(256)
+                    + (char) random.nextInt(256);
+                rotors.add(new MovingRotor(names[i],
+                                           randomPermutation(random, false),
+                                           notches));
+            }
+        }
+        Machine machine = new Machine(BYTES, numRotors, pawls, rotors);
+        machine.insertRotors(names);
+        int[] settings = new int[numRotors - 1];
+        for (int i = 0; i < settings.length; i += 1) {
+            settings[i] = random.nextInt(256);
+        }
+        machine.setRotors(settings);
+        machine.setPlugboard(randomPermutation(random, true));
+        return machine;
+    }
+
+    /** Return LEN random bytes. */
+    private byte[] randomBytes(int len) {
+        byte[] data = new byte[len];
+        new Random(len).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void alphabet() {
+        assertEquals(256, BYTES.size());
+        assertEquals(200, BYTES.toInt((char) 200));
+        assertEquals((char) 255, BYTES.toChar(255));
+        assertTrue(BYTES.contains((char) 0));
+        assertFalse(BYTES.contains((char) 256));
+    }
+
+    @Test
+    public void matchesMachine() {
+        int[][] shapes = { {5, 3}, {3, 2}, {4, 1}, {3, 0} };
+        for (int[] shape : shapes) {
+            Machine machine = machine(shape[0], shape[0], shape[1]);
+            ByteMachine bytes = new ByteMachine(machine);
+            byte[] data = randomBytes(200_000);
+            byte[] result = new byte[data.length];
+            Random chunks = new Random(1);
+            for (int done = 0; done < data.length;) {
+                int n = Math.min(data.length - done, chunks.nextInt(1000));
+                bytes.convert(data, done, result, done, n);
+                done += n;
+            }
+            for (int i = 0; i < data.length; i += 1) {
+                assertEquals("byte " + i + " of shape " + shape[0],
+                             machine.convert(data[i] & 0xff),
+                             result[i] & 0xff);
+            }
+        }
+    }
+
+    @Test
+    public void directBuffers() {
+        byte[] data = randomBytes(300_000);
+        ByteBuffer in = ByteBuffer.allocateDirect(data.length);
+        in.put(data).flip();
+        ByteBuffer out = ByteBuffer.allocateDirect(data.length);
+        new ByteMachine(machine(7, 5, 3)).convert(in, out);
+        assertFalse(in.hasRemaining());
+        byte[] expected = data.clone();
+        new ByteMachine(machine(7, 5, 3)).convert(expected, 0, expected, 0,
+                                                  expected.length);
+        byte[] result = new byte[data.length];
+        out.flip();
+        out.get(result);
+        assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public void filesRoundTrip() throws IOException {
+        byte[] data = randomBytes(250_000);
+        Path plain = Files.createTempFile("enigma", ".bin");
+        Path cipher = Files.createTempFile("enigma", ".bin");
+        Path back = Files.createTempFile("enigma", ".bin");
+        try {
+            Files.write(plain, data);
+            assertEquals(data.length,
+                         new ByteMachine(machine(3, 5, 3)).convert(plain,
+                                                                   cipher));
+            assertFalse(Arrays.equals(data, Files.readAllBytes(cipher)));
+            new ByteMachine(machine(3, 5, 3)).convert(cipher, back);
+            assertArrayEquals(data, Files.readAllBytes(back));
+        } finally {
+            Files.delete(plain);
+            Files.delete(cipher);
+            Files.delete(back);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package enigma;
+
+/** Something that converts ranges of characters, keeping track of its
+ *  position in the message being converted (e.g., a Machine).
+ *  @author Jacky Tian
+ */
+interface CharConverter {
+
+    /** Convert the LEN characters of IN starting at INOFF, storing the
+     *  results in OUT starting at OUTOFF.  IN and OUT may be the same
+     *  array. */
+    void convert(char[] in, int inOff, char[] out, int outOff, int len);
+
+}
@@ -0,0 +1,168 @@
+package enigma;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded queue of character chunks between one producer thread and
+ *  one consumer thread.  The chunks are allocated once and passed back and
+ *  forth: the producer claims a free chunk, fills it and publishes it; the
+ *  consumer takes it, uses it and releases it.  A producer that gets ahead
+ *  waits for a free chunk, which keeps the two in step (backpressure).
+ *
+ *  Each index is written by one thread only, so no locks are needed.  A
+ *  thread that must wait spins briefly and then parks until the other
+ *  side moves.
+ *  @author Jacky Tian
+ */
+class ChunkRing {
+
+    /** A ring of at least NUMCHUNKS chunks (rounded up to a power of two)
+     *  of CHUNKSIZE characters each. */
+    ChunkRing(int numChunks, int chunkSize) {
+        if (numChunks < 1 || chunkSize < 1) {
+            throw error("bad ring size");
+        }
+        int size = Integer.highestOneBit(numChunks);
+        if (size < numChunks) {
+            size *= 2;
+        }
+        _chunks = new char[size][chunkSize];
+        _lengths = new int[size];
+        _mask = size - 1;
+    }
+
+    /** Return the number of characters in each chunk. */
+    int chunkSize() {
+        return _chunks[0].length;
+    }
+
+    /** Return the next free chunk, for the producer to fill, waiting for
+     *  the consumer to release one if necessary.  The same chunk is
+     *  returned until it is published. */
+    char[] claim() {
+        long tail = _tail;
+        if (tail - _head > _mask) {
+            for (int spins = 0; tail - _head > _mask; spins += 1) {
+                checkFailure();
+                if (spins >= SPINS) {
+                    _waitingProducer = Thread.currentThread();
+                    if (tail - _head > _mask && _failure == null) {
+                        LockSupport.park(this);
+                    }
+                    _waitingProducer = null;
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+        checkFailure();
+        return _chunks[(int) tail & _mask];
+    }
+
+    /** Pass the chunk returned by claim, holding LEN characters, to the
+     *  consumer. */
+    void publish(int len) {
+        long tail = _tail;
+        _lengths[(int) tail & _mask] = len;
+        _tail = tail + 1;
+        wake(_waitingConsumer);
+    }
+
+    /** Called by the producer once it has published its last chunk. */
+    void close() {
+        _closed = true;
+        wake(_waitingConsumer);
+    }
+
+    /** Return the next published chunk, for the consumer, waiting for the
+     *  producer if necessary, or null if the producer has closed me and
+     *  all chunks have been taken.  The chunk's length is then given by
+     *  length() until it is released. */
+    char[] take() {
+        long head = _head;
+        for (int spins = 0; _tail == head; spins += 1) {
+            checkFailure();
+            if (_closed) {
+                if (_tail == head) {
+                    return null;
+                }
+                break;
+            }
+            if (spins >= SPINS) {
+                _waitingConsumer = Thread.currentThread();
+                if (_tail == head && !_closed && _failure == null) {
+                    LockSupport.park(this);
+                }
+                _waitingConsumer = null;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+        checkFailure();
+        return _chunks[(int) head & _mask];
+    }
+
+    /** Return the number of characters in the chunk returned by take. */
+    int length() {
+        return _lengths[(int) _head & _mask];
+    }
+
+    /** Return the chunk returned by take to the producer. */
+    void release() {
+        _head += 1;
+        wake(_waitingProducer);
+    }
+
+    /** Stop both sides because of FAILURE: any waiting or later call of
+     *  claim or take throws an EnigmaException. */
+    void abort(Throwable failure) {
+        _failure = failure;
+        wake(_waitingProducer);
+        wake(_waitingConsumer);
+    }
+
+    /** Throw an EnigmaException if I have been aborted. */
+    private void checkFailure() {
+        if (_failure != null) {
+            throw error("pipeline stopped: %s", _failure.getMessage());
+        }
+    }
+
+    /** Unpark THREAD, if it is not null. */
+    private static void wake(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /** Number of times a thread checks again before parking. */
+    private static final int SPINS = 64;
+
+    /** The chunks, indexed by sequence number modulo their number. */
+    private final char[][] _chunks;
+
+    /** Number of valid characters in each published chunk. */
+    private final int[] _lengths;
+
+    /** Number of chunks minus one. */
+    private final int _mask;
+
+    /** Sequence number of the next chunk to publish (producer only). */
+    private volatile long _tail;
+
+    /** Sequence number of the next chunk to take (consumer only). */
+    private volatile long _head;
+
+    /** True once the producer has published its last chunk. */
+    private volatile boolean _closed;
+
+    /** The failure that stopped the pipeline, or null. */
+    private volatile Throwable _failure;
+
+    /** The producer, while it is parked waiting for a free chunk. */
+    private volatile Thread _waitingProducer;
+
+    /** The consumer, while it is parked waiting for a chunk. */
+    private volatile Thread _waitingConsumer;
+}
@@ -0,0 +1,65 @@
+package enigma;
+
+import java.util.concurrent.RecursiveAction;
+
+/** A fork/join task that converts a range of characters with a machine
+ *  positioned at the start of the range.  Ranges longer than a chunk are
+ *  split in two; the right half gets a copy of the machine skipped ahead
+ *  to its offset, so the halves can be converted concurrently and still
+ *  give the same result as a sequential conversion.
+ *  @author Jacky Tian
+ */
+class ChunkedConversion extends RecursiveAction {
+
+    /** A task converting the LEN characters of IN starting at INOFF into
+     *  OUT starting at OUTOFF with MACHINE, which is positioned at the
+     *  start of the range and belongs to this task.  Ranges are split
+     *  until they are at most CHUNK characters long. */
+    ChunkedConversion(Machine machine, char[] in, int inOff,
+                      char[] out, int outOff, int len, int chunk) {
+        _machine = machine;
+        _in = in;
+        _inOff = inOff;
+        _out = out;
+        _outOff = outOff;
+        _len = len;
+        _chunk = chunk;
+    }
+
+    @Override
+    protected void compute() {
+        if (_len <= _chunk) {
+            _machine.convertSequentially(_in, _inOff, _out, _outOff, _len);
+            return;
+        }
+        int half = _len / 2;
+        Machine right = _machine.copy();
+        right.skip(half);
+        invokeAll(new ChunkedConversion(_machine, _in, _inOff,
+                                        _out, _outOff, half, _chunk),
+                  new ChunkedConversion(right, _in, _inOff + half,
+                                        _out, _outOff + half, _len - half,
+                                        _chunk));
+    }
+
+    /** The machine converting my range, positioned at its start. */
+    private final Machine _machine;
+
+    /** Source of the characters to convert. */
+    private final char[] _in;
+
+    /** Offset of my range in _in. */
+    private final int _inOff;
+
+    /** Destination of the converted characters. */
+    private final char[] _out;
+
+    /** Offset of my range in _out. */
+    private final int _outOff;
+
+    /** Length of my range. */
+    private final int _len;
+
+    /** Length at or below which a range is converted without splitting. */
+    private final int _chunk;
+}
@@ -0,0 +1,196 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Reads and writes compiled machine configurations.  A snapshot holds
+ *  the alphabet, the numbers of rotor slots and pawls, and for each
+ *  available rotor its kind, name, notches and permutation table, so that
+ *  loading one (through a memory-mapped file) involves no parsing of
+ *  cycle notation.  The format, in big-endian order, is
+ *
+ *      int MAGIC, int VERSION
+ *      int alphabet size, followed by that many chars
+ *      int number of rotor slots, int number of pawls
+ *      int number of rotors, followed for each rotor by
+ *          byte kind ('M', 'N' or 'R')
+ *          int name length, followed by that many chars
+ *          int notch count, followed by that many notch indices (int)
+ *          alphabet size ints: the image of each index under the
+ *              rotor's permutation
+ *
+ *  @author Jacky Tian
+ */
+class ConfigSnapshot {
+
+    /** Not instantiable. */
+    private ConfigSnapshot() {
+    }
+
+    /** Return true iff the file named FILE starts like a snapshot. */
+    static boolean isSnapshot(Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                continue;
+            }
+            return !header.hasRemaining() && header.getInt(0) == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Write a snapshot of the configuration of TEMPLATE (its alphabet,
+     *  slot and pawl counts and available rotors) to FILE. */
+    static void write(Machine template, Path file) {
+        Alphabet alphabet = template.alphabet();
+        List<Rotor> rotors = template.availableRotors();
+        int n = alphabet.size();
+        ByteBuffer out = ByteBuffer.allocate(sizeOf(n, rotors));
+        out.putInt(MAGIC).putInt(VERSION);
+        out.putInt(n);
+        for (int i = 0; i < n; i += 1) {
+            out.putChar(alphabet.toChar(i));
+        }
+        out.putInt(template.numRotors()).putInt(template.numPawls());
+        out.putInt(rotors.size());
+        for (Rotor rotor : rotors) {
+            out.put((byte) kind(rotor));
+            putString(out, rotor.name());
+            String notches =
+                rotor.rotates() ? ((MovingRotor) rotor).notches() : "";
+            out.putInt(notches.length());
+            for (int i = 0; i < notches.length(); i += 1) {
+                out.putInt(alphabet.toInt(notches.charAt(i)));
+            }
+            for (int k : rotor.permutation().table()) {
+                out.putInt(k);
+            }
+        }
+        out.flip();
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return a machine with the configuration in the snapshot FILE. */
+    static Machine read(Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            MappedByteBuffer in =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(in);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return a machine with the configuration in the snapshot in IN. */
+    static Machine read(ByteBuffer in) {
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw error("not a configuration snapshot");
+            }
+            Alphabet alphabet = new Alphabet(getString(in));
+            int n = alphabet.size();
+            int numRotors = in.getInt(), pawls = in.getInt();
+            int numAvailable = in.getInt();
+            ArrayList<Rotor> rotors = new ArrayList<>(numAvailable);
+            for (int r = 0; r < numAvailable; r += 1) {
+                char kind = (char) in.get();
+                String name = getString(in);
+                char[] notches = new char[in.getInt()];
+                for (int i = 0; i < notches.length; i += 1) {
+                    notches[i] = alphabet.toChar(in.getInt());
+                }
+                int[] table = new int[n];
+                IntBuffer ints = in.asIntBuffer();
+                ints.get(table);
+                in.position(in.position() + 4 * n);
+                Permutation perm = new Permutation(table, alphabet);
+                switch (kind) {
+                case 'M':
+                    rotors.add(new MovingRotor(name, perm,
+                                               new String(notches)));
+                    break;
+                case 'N':
+                    rotors.add(new FixedRotor(name, perm));
+                    break;
+                case 'R':
+                    rotors.add(new Reflector(name, perm));
+                    break;
+                default:
+                    throw error("bad rotor kind in snapshot");
+                }
+            }
+            return new Machine(alphabet, numRotors, pawls, rotors);
+        } catch (RuntimeException excp) {
+            if (excp instanceof EnigmaException) {
+                throw excp;
+            }
+            throw error("corrupt configuration snapshot");
+        }
+    }
+
+    /** Return the kind of ROTOR as recorded in a snapshot. */
+    private static char kind(Rotor rotor) {
+        if (rotor.rotates()) {
+            return 'M';
+        } else if (rotor.reflecting()) {
+            return 'R';
+        } else {
+            return 'N';
+        }
+    }
+
+    /** Return the size in bytes of a snapshot with alphabet size N and
+     *  available rotors ROTORS. */
+    private static int sizeOf(int n, List<Rotor> rotors) {
+        int size = 4 * 7 + 2 * n;
+        for (Rotor rotor : rotors) {
+            size += 1 + 4 + 2 * rotor.name().length() + 4 + 4 * n;
+            if (rotor.rotates()) {
+                size += 4 * ((MovingRotor) rotor).notches().length();
+            }
+        }
+        return size;
+    }
+
+    /** Write S to OUT as its length followed by its characters. */
+    private static void putString(ByteBuffer out, String s) {
+        out.putInt(s.length());
+        for (int i = 0; i < s.length(); i += 1) {
+            out.putChar(s.charAt(i));
+        }
+    }
+
+    /** Read a string written by putString from IN. */
+    private static String getString(ByteBuffer in) {
+        char[] chars = new char[in.getInt()];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = in.getChar();
+        }
+        return new String(chars);
+    }
+
+    /** First word of every snapshot ("ENGM"). */
+    static final int MAGIC = 0x454e474d;
+
+    /** Version of the snapshot format. */
+    static final int VERSION = 1;
+}
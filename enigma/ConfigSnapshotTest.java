@@ -0,0 +1,55 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigSnapshot class.
+ *  @author Jacky Tian
+ */
+public class ConfigSnapshotTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path file = Files.createTempFile("enigma", ".snap");
+        try {
+            ConfigSnapshot.write(new Machine(UPPER, 5, 3, ALL_ROTORS), file);
+            assertTrue("Not recognized", ConfigSnapshot.isSnapshot(file));
+            Machine machine = ConfigSnapshot.read(file);
+            assertEquals("Wrong number of rotors", 5, machine.numRotors());
+            assertEquals("Wrong number of pawls", 3, machine.numPawls());
+            machine.insertRotors(new String[] {"B", "BETA", "III", "IV", "I"});
+            machine.setRotors("AXLE");
+            machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                                 machine.alphabet()));
+            assertEquals("Wrong convert", "QVPQ", machine.convert("FROM"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testNotSnapshot() throws IOException {
+        Path file = Files.createTempFile("enigma", ".conf");
+        try {
+            Files.write(file, "ABCDEFGHIJKLMNOPQRSTUVWXYZ 5 3".getBytes());
+            assertFalse("Recognized text", ConfigSnapshot.isSnapshot(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
@@ -0,0 +1,609 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the characteristic cycle structures of a machine, in the
+ *  manner of Rejewski's.  When each message key is enciphered twice at a
+ *  common initial setting, the permutations A .. F performed at the first
+ *  six positions give the products AD, BE and CF (A then D, and so on),
+ *  which can be read off enough six-character indicators (see
+ *  characteristics).  The plugboard only renames the elements of these
+ *  products, so their cycle types depend on the rotor order and initial
+ *  setting alone, and they are few enough that the types of all three
+ *  products identify a handful of candidate settings.
+ *
+ *  The catalog maps each triple of cycle types to the candidates
+ *  (rotor order and setting) that produce it.  It is built in parallel,
+ *  one task per rotor order and setting of the leftmost rotor, and stored
+ *  in a compact binary file (see write), in big-endian order:
+ *
+ *      int MAGIC, int VERSION
+ *      int alphabet size, followed by that many chars
+ *      int number of rotor slots
+ *      int number of rotor orders, followed for each by one name per
+ *          slot (int length, followed by that many chars)
+ *      int number of cycle types, followed for each by
+ *          int number of cycles, followed by that many lengths (int),
+ *          in non-increasing order
+ *      int number of keys K, followed by K longs, each holding the
+ *          indices of the cycle types of AD, BE and CF in 21-bit fields
+ *          (AD highest), in increasing order
+ *      K + 1 ints: the candidates of key I are entries START[I] ..
+ *          START[I + 1] - 1 of the following list
+ *      int number of candidates, followed by that many ints, each the
+ *          index of the rotor order times the number of settings, plus
+ *          the setting of the rotors in slots 1 .. numRotors - 1 as a
+ *          number in base alphabet size (slot 1 most significant)
+ *
+ *  @author Jacky Tian
+ */
+class CycleCatalog {
+
+    /** A catalog for machines with ALPHABET and NUMROTORS slots, covering
+     *  the rotor orders ORDERS, whose cycle types are PARTITIONS, and with
+     *  the candidates CANDIDATES[STARTS[I] .. STARTS[I + 1] - 1] for
+     *  KEYS[I]. */
+    private CycleCatalog(Alphabet alphabet, int numRotors,
+                         List<String[]> orders, int[][] partitions,
+                         long[] keys, int[] starts, int[] candidates) {
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _orders = orders;
+        _partitions = partitions;
+        _keys = keys;
+        _starts = starts;
+        _candidates = candidates;
+        _numSettings = numSettings(alphabet.size(), numRotors);
+        _partitionIndex = new HashMap<>();
+        for (int p = 0; p < partitions.length; p += 1) {
+            _partitionIndex.put(partitionKey(partitions[p],
+                                             partitions[p].length), p);
+        }
+    }
+
+    /** Return a catalog of all rotor orders of TEMPLATE at every setting,
+     *  built using the common pool. */
+    static CycleCatalog build(Machine template) {
+        return build(template, template.rotorOrders(),
+                     ForkJoinPool.commonPool());
+    }
+
+    /** Return a catalog of the rotor orders ORDERS (each naming the
+     *  rotors of every slot of TEMPLATE, reflector first) at every
+     *  setting, running tasks in POOL. */
+    static CycleCatalog build(Machine template, List<String[]> orders,
+                              ForkJoinPool pool) {
+        int n = template.alphabet().size(), numRotors = template.numRotors();
+        int numSettings = numSettings(n, numRotors);
+        if ((long) numSettings * orders.size() > Integer.MAX_VALUE) {
+            throw error("too many candidates for a catalog");
+        }
+        ArrayList<Callable<Tabulation>> tasks = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i += 1) {
+            for (int first = 0; first < n; first += 1) {
+                tasks.add(new Tabulation(template, orders.get(i),
+                                         i * numSettings
+                                         + first * (numSettings / n),
+                                         first));
+            }
+        }
+        ArrayList<Tabulation> done = new ArrayList<>();
+        try {
+            for (Future<Tabulation> task : pool.invokeAll(tasks)) {
+                done.add(task.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("catalog interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        }
+        return merge(template, orders, numSettings, done);
+    }
+
+    /** Return the catalog for TEMPLATE and ORDERS, with NUMSETTINGS
+     *  settings per order, made from the results of the tasks DONE. */
+    private static CycleCatalog merge(Machine template,
+                                      List<String[]> orders,
+                                      int numSettings,
+                                      List<Tabulation> done) {
+        HashMap<String, int[]> distinct = new HashMap<>();
+        for (Tabulation task : done) {
+            for (int[] partition : task._partitions) {
+                distinct.putIfAbsent(partitionKey(partition,
+                                                  partition.length),
+                                     partition);
+            }
+        }
+        int[][] partitions = distinct.values().toArray(new int[0][]);
+        Arrays.sort(partitions, Arrays::compare);
+        if (partitions.length > KEY_MASK) {
+            throw error("too many cycle types for a catalog");
+        }
+        HashMap<String, Integer> index = new HashMap<>();
+        for (int p = 0; p < partitions.length; p += 1) {
+            index.put(partitionKey(partitions[p], partitions[p].length), p);
+        }
+        int total = numSettings * orders.size();
+        long[] keyOf = new long[total];
+        for (Tabulation task : done) {
+            int[] global = new int[task._partitions.size()];
+            for (int p = 0; p < global.length; p += 1) {
+                int[] partition = task._partitions.get(p);
+                global[p] =
+                    index.get(partitionKey(partition, partition.length));
+            }
+            int[] types = task._types;
+            for (int j = 0; j < types.length; j += 3) {
+                keyOf[task._firstCandidate + j / 3] =
+                    key(global[types[j]], global[types[j + 1]],
+                        global[types[j + 2]]);
+            }
+        }
+        long[] keys = keyOf.clone();
+        Arrays.sort(keys);
+        int numKeys = 0;
+        for (int i = 0; i < keys.length; i += 1) {
+            if (i == 0 || keys[i] != keys[i - 1]) {
+                keys[numKeys] = keys[i];
+                numKeys += 1;
+            }
+        }
+        keys = Arrays.copyOf(keys, numKeys);
+        int[] starts = new int[numKeys + 1];
+        int[] slot = new int[total];
+        for (int c = 0; c < total; c += 1) {
+            slot[c] = Arrays.binarySearch(keys, keyOf[c]);
+            starts[slot[c] + 1] += 1;
+        }
+        for (int k = 0; k < numKeys; k += 1) {
+            starts[k + 1] += starts[k];
+        }
+        int[] next = Arrays.copyOf(starts, numKeys);
+        int[] candidates = new int[total];
+        for (int c = 0; c < total; c += 1) {
+            candidates[next[slot[c]]] = c;
+            next[slot[c]] += 1;
+        }
+        ArrayList<String[]> names = new ArrayList<>();
+        for (String[] order : orders) {
+            names.add(order.clone());
+        }
+        return new CycleCatalog(template.alphabet(), template.numRotors(),
+                                names, partitions, keys, starts, candidates);
+    }
+
+    /** Return the products AD, BE and CF, as permutation tables indexed
+     *  [0 .. 2], read off INDICATORS.  Each indicator is six characters of
+     *  ALPHABET (blanks ignored): a three-character message key enciphered
+     *  twice from the same initial setting.  Throws an EnigmaException if
+     *  the indicators are inconsistent or do not determine all three
+     *  products. */
+    static int[][] characteristics(Collection<String> indicators,
+                                   Alphabet alphabet) {
+        int n = alphabet.size();
+        int[][] products = new int[3][n];
+        int[][] inverses = new int[3][n];
+        for (int j = 0; j < 3; j += 1) {
+            Arrays.fill(products[j], -1);
+            Arrays.fill(inverses[j], -1);
+        }
+        for (String indicator : indicators) {
+            String chars = indicator.replaceAll("\\s", "");
+            if (chars.length() != 6) {
+                throw error("indicator not six characters: %s", indicator);
+            }
+            for (int j = 0; j < 3; j += 1) {
+                char a = chars.charAt(j), d = chars.charAt(j + 3);
+                if (!alphabet.contains(a) || !alphabet.contains(d)) {
+                    throw error("indicator not in alphabet: %s", indicator);
+                }
+                int from = alphabet.toInt(a), to = alphabet.toInt(d);
+                if ((products[j][from] >= 0 && products[j][from] != to)
+                    || (inverses[j][to] >= 0 && inverses[j][to] != from)) {
+                    throw error("inconsistent indicators");
+                }
+                products[j][from] = to;
+                inverses[j][to] = from;
+            }
+        }
+        for (int[] product : products) {
+            for (int to : product) {
+                if (to < 0) {
+                    throw error("too few indicators");
+                }
+            }
+        }
+        return products;
+    }
+
+    /** Return the candidates whose products AD, BE and CF (permutation
+     *  tables) have the cycle types of those given, in order of rotor
+     *  order and then setting. */
+    List<Candidate> lookup(int[] ad, int[] be, int[] cf) {
+        int[] scratch = new int[_alphabet.size()];
+        int[] ids = new int[3];
+        int[][] products = { ad, be, cf };
+        ArrayList<Candidate> result = new ArrayList<>();
+        for (int j = 0; j < 3; j += 1) {
+            if (products[j].length != scratch.length) {
+                throw error("product has wrong size");
+            }
+            int count = Permutation.cycleType(products[j], scratch);
+            reverse(scratch, count);
+            Integer id = _partitionIndex.get(partitionKey(scratch, count));
+            if (id == null) {
+                return result;
+            }
+            ids[j] = id;
+        }
+        int k = Arrays.binarySearch(_keys, key(ids[0], ids[1], ids[2]));
+        if (k < 0) {
+            return result;
+        }
+        for (int i = _starts[k]; i < _starts[k + 1]; i += 1) {
+            result.add(candidate(_candidates[i]));
+        }
+        return result;
+    }
+
+    /** Return the number of candidates (rotor orders times settings). */
+    int size() {
+        return _candidates.length;
+    }
+
+    /** Return the number of distinct triples of cycle types. */
+    int numKeys() {
+        return _keys.length;
+    }
+
+    /** Return the candidate with index C (see the file format). */
+    private Candidate candidate(int c) {
+        int n = _alphabet.size();
+        int position = c % _numSettings;
+        char[] setting = new char[_numRotors - 1];
+        for (int i = setting.length - 1; i >= 0; i -= 1) {
+            setting[i] = _alphabet.toChar(position % n);
+            position /= n;
+        }
+        return new Candidate(_orders.get(c / _numSettings).clone(),
+                             new String(setting));
+    }
+
+    /** Write me to FILE, in the format described above. */
+    void write(Path file) {
+        int n = _alphabet.size();
+        long size = 4L * 8 + 2L * n + 8L * _keys.length
+            + 4L * _starts.length + 4L * _candidates.length;
+        for (String[] order : _orders) {
+            for (String name : order) {
+                size += 4 + 2 * name.length();
+            }
+        }
+        for (int[] partition : _partitions) {
+            size += 4 + 4 * partition.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw error("catalog too large to write");
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) size);
+        out.putInt(MAGIC).putInt(VERSION);
+        out.putInt(n);
+        for (int i = 0; i < n; i += 1) {
+            out.putChar(_alphabet.toChar(i));
+        }
+        out.putInt(_numRotors);
+        out.putInt(_orders.size());
+        for (String[] order : _orders) {
+            for (String name : order) {
+                out.putInt(name.length());
+                for (int i = 0; i < name.length(); i += 1) {
+                    out.putChar(name.charAt(i));
+                }
+            }
+        }
+        out.putInt(_partitions.length);
+        for (int[] partition : _partitions) {
+            out.putInt(partition.length);
+            out.asIntBuffer().put(partition);
+            out.position(out.position() + 4 * partition.length);
+        }
+        out.putInt(_keys.length);
+        out.asLongBuffer().put(_keys);
+        out.position(out.position() + 8 * _keys.length);
+        out.asIntBuffer().put(_starts);
+        out.position(out.position() + 4 * _starts.length);
+        out.putInt(_candidates.length);
+        out.asIntBuffer().put(_candidates);
+        out.position(out.position() + 4 * _candidates.length);
+        out.flip();
+        try (FileChannel channel =
+             FileChannel.open(file, StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Return the catalog written to FILE by write. */
+    static CycleCatalog read(Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            MappedByteBuffer in =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(in);
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return the catalog written by write, read from IN. */
+    static CycleCatalog read(ByteBuffer in) {
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw error("not a cycle catalog");
+            }
+            char[] chars = new char[in.getInt()];
+            for (int i = 0; i < chars.length; i += 1) {
+                chars[i] = in.getChar();
+            }
+            Alphabet alphabet = new Alphabet(new String(chars));
+            int numRotors = in.getInt();
+            int numOrders = in.getInt();
+            ArrayList<String[]> orders = new ArrayList<>(numOrders);
+            for (int k = 0; k < numOrders; k += 1) {
+                String[] order = new String[numRotors];
+                for (int i = 0; i < numRotors; i += 1) {
+                    char[] name = new char[in.getInt()];
+                    for (int j = 0; j < name.length; j += 1) {
+                        name[j] = in.getChar();
+                    }
+                    order[i] = new String(name);
+                }
+                orders.add(order);
+            }
+            int[][] partitions = new int[in.getInt()][];
+            for (int p = 0; p < partitions.length; p += 1) {
+                partitions[p] = getInts(in, in.getInt());
+            }
+            int numKeys = in.getInt();
+            long[] keys = new long[numKeys];
+            in.asLongBuffer().get(keys);
+            in.position(in.position() + 8 * numKeys);
+            int[] starts = getInts(in, numKeys + 1);
+            int[] candidates = getInts(in, in.getInt());
+            if (numSettings(alphabet.size(), numRotors) * (long) numOrders
+                != candidates.length
+                || starts[numKeys] != candidates.length) {
+                throw error("corrupt cycle catalog");
+            }
+            return new CycleCatalog(alphabet, numRotors, orders, partitions,
+                                    keys, starts, candidates);
+        } catch (RuntimeException excp) {
+            if (excp instanceof EnigmaException) {
+                throw excp;
+            }
+            throw error("corrupt cycle catalog");
+        }
+    }
+
+    /** Return the next COUNT ints of IN. */
+    private static int[] getInts(ByteBuffer in, int count) {
+        int[] result = new int[count];
+        in.asIntBuffer().get(result);
+        in.position(in.position() + 4 * count);
+        return result;
+    }
+
+    /** Return the number of settings of a machine with an alphabet of N
+     *  characters and NUMROTORS slots, if it fits in an int. */
+    private static int numSettings(int n, int numRotors) {
+        long result = 1;
+        for (int i = 1; i < numRotors; i += 1) {
+            result *= n;
+            if (result > Integer.MAX_VALUE) {
+                throw error("too many settings for a catalog");
+            }
+        }
+        return (int) result;
+    }
+
+    /** Return the key for the cycle types with indices AD, BE and CF. */
+    private static long key(int ad, int be, int cf) {
+        return (long) ad << (2 * KEY_BITS) | (long) be << KEY_BITS | cf;
+    }
+
+    /** Return a string identifying the cycle type given by the first
+     *  COUNT elements of LENGTHS. */
+    private static String partitionKey(int[] lengths, int count) {
+        char[] chars = new char[count];
+        for (int i = 0; i < count; i += 1) {
+            chars[i] = (char) lengths[i];
+        }
+        return new String(chars);
+    }
+
+    /** Reverse the first COUNT elements of A. */
+    private static void reverse(int[] a, int count) {
+        for (int i = 0, j = count - 1; i < j; i += 1, j -= 1) {
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /** A rotor order and initial setting found in a catalog. */
+    static class Candidate {
+
+        /** A candidate with rotors named ROTORS (reflector first) at
+         *  SETTING. */
+        Candidate(String[] rotors, String setting) {
+            _rotors = rotors;
+            _setting = setting;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my initial setting. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return me as a settings line without plugboard. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting;
+        }
+
+        /** Names of the rotors, reflector first. */
+        private final String[] _rotors;
+
+        /** Initial setting. */
+        private final String _setting;
+    }
+
+    /** Computes the cycle types of one rotor order at all settings with a
+     *  given setting of the rotor in slot 1. */
+    private static class Tabulation implements Callable<Tabulation> {
+
+        /** A task for the rotors named ORDER in copies of TEMPLATE with
+         *  the rotor in slot 1 at FIRST, whose first setting is candidate
+         *  number FIRSTCANDIDATE. */
+        Tabulation(Machine template, String[] order, int firstCandidate,
+                   int first) {
+            _template = template;
+            _order = order;
+            _firstCandidate = firstCandidate;
+            _first = first;
+        }
+
+        @Override
+        public Tabulation call() {
+            Machine machine = _template.copy();
+            machine.insertRotors(_order);
+            Alphabet alphabet = machine.alphabet();
+            machine.setPlugboard(new Permutation("", alphabet));
+            int n = alphabet.size();
+            int[] settings = new int[machine.numRotors() - 1];
+            settings[0] = _first;
+            int count = numSettings(n, machine.numRotors()) / n;
+            _types = new int[3 * count];
+            int[] tables = new int[6 * n], product = new int[n];
+            int[] lengths = new int[n];
+            HashMap<String, Integer> index = new HashMap<>();
+            for (int s = 0; s < count; s += 1) {
+                machine.setRotors(settings);
+                machine.tabulate(6, tables, 0);
+                for (int j = 0; j < 3; j += 1) {
+                    for (int c = 0; c < n; c += 1) {
+                        product[c] = tables[(j + 3) * n + tables[j * n + c]];
+                    }
+                    int cycles = Permutation.cycleType(product, lengths);
+                    reverse(lengths, cycles);
+                    String key = partitionKey(lengths, cycles);
+                    Integer id = index.get(key);
+                    if (id == null) {
+                        id = _partitions.size();
+                        index.put(key, id);
+                        _partitions.add(Arrays.copyOf(lengths, cycles));
+                    }
+                    _types[3 * s + j] = id;
+                }
+                for (int i = settings.length - 1; i > 0; i -= 1) {
+                    settings[i] += 1;
+                    if (settings[i] < n) {
+                        break;
+                    }
+                    settings[i] = 0;
+                }
+            }
+            return this;
+        }
+
+        /** Machine whose rotors are used. */
+        private final Machine _template;
+
+        /** Names of the rotors, reflector first. */
+        private final String[] _order;
+
+        /** Index of the candidate for my first setting. */
+        private final int _firstCandidate;
+
+        /** Setting of the rotor in slot 1. */
+        private final int _first;
+
+        /** Cycle types found, in order of discovery. */
+        private final ArrayList<int[]> _partitions = new ArrayList<>();
+
+        /** Indices in _partitions of the cycle types of AD, BE and CF at
+         *  each of my settings, three per setting. */
+        private int[] _types;
+    }
+
+    /** First word of every catalog ("ECAT"). */
+    static final int MAGIC = 0x45434154;
+
+    /** Version of the catalog format. */
+    static final int VERSION = 1;
+
+    /** Number of bits of each cycle type index in a key. */
+    private static final int KEY_BITS = 21;
+
+    /** Largest number of cycle types a catalog can index. */
+    private static final int KEY_MASK = (1 << KEY_BITS) - 1;
+
+    /** Alphabet of the machine catalogued. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots of the machine catalogued. */
+    private final int _numRotors;
+
+    /** Number of settings of each rotor order. */
+    private final int _numSettings;
+
+    /** Rotor orders catalogued, reflector first in each. */
+    private final List<String[]> _orders;
+
+    /** Cycle types, in increasing lexicographic order, each with its
+     *  lengths in non-increasing order. */
+    private final int[][] _partitions;
+
+    /** Index in _partitions of each cycle type, by partitionKey. */
+    private final HashMap<String, Integer> _partitionIndex;
+
+    /** Keys of the triples of cycle types present, in increasing
+     *  order. */
+    private final long[] _keys;
+
+    /** The candidates of _keys[I] are _candidates[_starts[I] ..
+     *  _starts[I + 1] - 1]. */
+    private final int[] _starts;
+
+    /** Candidate indices grouped by key. */
+    private final int[] _candidates;
+}
@@ -0,0 +1,115 @@
+package enigma;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CycleCatalog class.
+ *  @author Jacky Tian
+ */
+public class CycleCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /** Rotor orders catalogued by these tests. */
+    private static final List<String[]> ORDERS =
+        List.of(new String[] {"B", "III", "IV", "I"},
+                new String[] {"B", "I", "II", "III"});
+
+    /** Return the indicators of 26 message keys enciphered twice at
+     *  SETTING of ORDER with plugboard PLUGS. */
+    private List<String> indicators(String[] order, String setting,
+                                    String plugs) {
+        Machine machine = freshMachine(4, null);
+        machine.insertRotors(order);
+        machine.setPlugboard(new Permutation(plugs, UPPER));
+        ArrayList<String> result = new ArrayList<>();
+        for (int k = 0; k < 26; k += 1) {
+            String key = "" + UPPER.toChar(k) + UPPER.toChar((k + 7) % 26)
+                + UPPER.toChar((k * 5 + 3) % 26);
+            machine.setRotors(setting);
+            result.add(machine.convert(key + key));
+        }
+        return result;
+    }
+
+    /** Return true iff CANDIDATES includes ORDER at SETTING. */
+    private boolean includes(List<CycleCatalog.Candidate> candidates,
+                             String[] order, String setting) {
+        for (CycleCatalog.Candidate candidate : candidates) {
+            if (Arrays.equals(order, candidate.rotors())
+                && candidate.setting().equals(setting)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void findsSetting() throws Exception {
+        CycleCatalog catalog =
+            CycleCatalog.build(freshMachine(4, null), ORDERS,
+                               new ForkJoinPool(2));
+        assertEquals(2 * 26 * 26 * 26, catalog.size());
+        for (String plugs : new String[] {"", "(HQ) (EX) (IP) (TR) (BY)"}) {
+            int[][] products = CycleCatalog.characteristics(
+                indicators(ORDERS.get(0), "AXL", plugs), UPPER);
+            List<CycleCatalog.Candidate> candidates =
+                catalog.lookup(products[0], products[1], products[2]);
+            assertTrue("true setting not found",
+                       includes(candidates, ORDERS.get(0), "AXL"));
+            assertTrue("too many candidates: " + candidates.size(),
+                       candidates.size() < 100);
+        }
+
+        Path file = Files.createTempFile("enigma", ".cat");
+        try {
+            catalog.write(file);
+            CycleCatalog copy = CycleCatalog.read(file);
+            assertEquals(catalog.size(), copy.size());
+            assertEquals(catalog.numKeys(), copy.numKeys());
+            int[][] products = CycleCatalog.characteristics(
+                indicators(ORDERS.get(1), "QEV", "(AZ)"), UPPER);
+            List<CycleCatalog.Candidate> candidates =
+                copy.lookup(products[0], products[1], products[2]);
+            assertTrue("true setting not found after reading",
+                       includes(candidates, ORDERS.get(1), "QEV"));
+            assertEquals(candidates.toString(),
+                         catalog.lookup(products[0], products[1],
+                                        products[2]).toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void characteristics() {
+        int[][] products = CycleCatalog.characteristics(
+            List.of("ABCBCD", "BCDCDE", "CDEDEF", "DEFEFA", "EFAFAB",
+                    "FABABC"), new Alphabet("ABCDEF"));
+        for (int[] product : products) {
+            assertArrayEquals(new int[] {1, 2, 3, 4, 5, 0}, product);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsInconsistentIndicators() {
+        CycleCatalog.characteristics(List.of("ABCDEF", "ABCEEF"), UPPER);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsTooFewIndicators() {
+        CycleCatalog.characteristics(List.of("ABCDEF"), UPPER);
+    }
+}
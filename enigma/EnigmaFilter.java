@@ -0,0 +1,94 @@
+package enigma;
+
+/** Converts text for EnigmaReader, EnigmaWriter, EnigmaInputStream and
+ *  EnigmaOutputStream, one chunk at a time.  Characters of the machine's
+ *  alphabet are converted, in runs, by the machine.  Other characters are
+ *  copied unchanged if passthrough is on, and dropped otherwise.  With
+ *  grouping on, converted characters are written in groups of five
+ *  separated by spaces, as Main does; groups restart after each line
+ *  terminator that is passed through, and spaces and tabs in the input are
+ *  dropped, since the grouping supplies its own.
+ *  @author Jacky Tian
+ */
+class EnigmaFilter {
+
+    /** A filter converting through MACHINE that copies non-alphabet
+     *  characters iff PASSTHROUGH and groups its output iff GROUPED. */
+    EnigmaFilter(Machine machine, boolean passthrough, boolean grouped) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _passthrough = passthrough;
+        _grouped = grouped;
+    }
+
+    /** Return the largest number of characters that filter can produce
+     *  from LEN characters. */
+    static int maxOutput(int len) {
+        return len + len / GROUP + 1;
+    }
+
+    /** Filter the LEN characters of IN starting at OFF into OUT starting
+     *  at OUTOFF, returning the number of characters written, which is at
+     *  most maxOutput(LEN).  The characters of IN are overwritten. */
+    int filter(char[] in, int off, int len, char[] out, int outOff) {
+        int o = outOff, end = off + len;
+        for (int i = off; i < end;) {
+            char c = in[i];
+            if (_alphabet.contains(c)) {
+                int j = i + 1;
+                while (j < end && _alphabet.contains(in[j])) {
+                    j += 1;
+                }
+                _machine.convert(in, i, in, i, j - i);
+                if (!_grouped) {
+                    System.arraycopy(in, i, out, o, j - i);
+                    o += j - i;
+                    i = j;
+                    continue;
+                }
+                for (; i < j; i += 1) {
+                    if (_column == GROUP) {
+                        out[o++] = ' ';
+                        _column = 0;
+                    }
+                    out[o++] = in[i];
+                    _column += 1;
+                }
+            } else {
+                i += 1;
+                if (_grouped) {
+                    if (c == ' ' || c == '\t') {
+                        continue;
+                    } else if (_passthrough && (c == '\n' || c == '\r')) {
+                        _column = 0;
+                    }
+                }
+                if (_passthrough) {
+                    out[o++] = c;
+                }
+            }
+        }
+        return o - outOff;
+    }
+
+    /** Size of the chunks in which the wrappers read and convert. */
+    static final int BUFFER_SIZE = 1 << 13;
+
+    /** Number of characters in an output group. */
+    private static final int GROUP = 5;
+
+    /** The machine converting alphabet characters. */
+    private final Machine _machine;
+
+    /** Alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** True iff non-alphabet characters are copied. */
+    private final boolean _passthrough;
+
+    /** True iff output is grouped. */
+    private final boolean _grouped;
+
+    /** Number of characters in the current output group. */
+    private int _column;
+}
@@ -0,0 +1,124 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+/** An InputStream that converts the text read from another InputStream
+ *  through a Machine as it is read, like a CipherInputStream.  Bytes are
+ *  decoded to characters and the converted characters encoded back with
+ *  the same charset; otherwise this is an EnigmaReader.
+ *  @author Jacky Tian
+ */
+class EnigmaInputStream extends InputStream {
+
+    /** A stream converting the text of IN, in charset CHARSET, with
+     *  MACHINE, passing through characters not in its alphabet, without
+     *  grouping. */
+    EnigmaInputStream(InputStream in, Machine machine, Charset charset) {
+        this(in, machine, charset, true, false);
+    }
+
+    /** A stream converting the text of IN, in charset CHARSET, with
+     *  MACHINE, copying characters not in its alphabet iff PASSTHROUGH
+     *  and grouping its output in fives iff GROUPED. */
+    EnigmaInputStream(InputStream in, Machine machine, Charset charset,
+                      boolean passthrough, boolean grouped) {
+        _reader = new EnigmaReader(
+            new InputStreamReader(in, charset.newDecoder()), machine,
+            passthrough, grouped);
+        _encoder = charset.newEncoder();
+        _chars = CharBuffer.allocate(EnigmaFilter.BUFFER_SIZE);
+        _chars.flip();
+        _bytes = ByteBuffer.allocate((int) Math.ceil(
+            EnigmaFilter.BUFFER_SIZE * _encoder.maxBytesPerChar()));
+        _bytes.flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return fill() ? _bytes.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int n = Math.min(len, _bytes.remaining());
+        _bytes.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return _bytes.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _reader.close();
+    }
+
+    /** Make sure that encoded bytes are available, reading, converting and
+     *  encoding more input as needed.  Returns false iff the input is
+     *  exhausted and all of it has been delivered. */
+    private boolean fill() throws IOException {
+        while (!_bytes.hasRemaining()) {
+            if (_flushed) {
+                return false;
+            }
+            if (!_eof) {
+                _chars.compact();
+                int n = _reader.read(_chars.array(), _chars.position(),
+                                     _chars.remaining());
+                if (n < 0) {
+                    _eof = true;
+                } else {
+                    _chars.position(_chars.position() + n);
+                }
+                _chars.flip();
+            }
+            _bytes.clear();
+            CoderResult result = _encoder.encode(_chars, _bytes, _eof);
+            if (result.isError()) {
+                result.throwException();
+            }
+            if (_eof && !_chars.hasRemaining()
+                && _encoder.flush(_bytes).isUnderflow()) {
+                _flushed = true;
+            }
+            _bytes.flip();
+        }
+        return true;
+    }
+
+    /** Source of converted characters. */
+    private final EnigmaReader _reader;
+
+    /** Encodes converted characters. */
+    private final CharsetEncoder _encoder;
+
+    /** Converted characters not yet encoded. */
+    private final CharBuffer _chars;
+
+    /** Encoded bytes not yet delivered. */
+    private final ByteBuffer _bytes;
+
+    /** True iff _reader is exhausted. */
+    private boolean _eof;
+
+    /** True iff all characters have been encoded. */
+    private boolean _flushed;
+}
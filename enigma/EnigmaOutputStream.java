@@ -0,0 +1,121 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/** An OutputStream that converts the text written to it through a Machine
+ *  and writes the result to another OutputStream, like a
+ *  CipherOutputStream.  Bytes are decoded to characters and the converted
+ *  characters encoded back with the same charset; otherwise this is an
+ *  EnigmaWriter.  A character split between writes is converted once it
+ *  is complete.
+ *  @author Jacky Tian
+ */
+class EnigmaOutputStream extends OutputStream {
+
+    /** A stream converting text in charset CHARSET with MACHINE onto OUT,
+     *  passing through characters not in its alphabet, without
+     *  grouping. */
+    EnigmaOutputStream(OutputStream out, Machine machine, Charset charset) {
+        this(out, machine, charset, true, false);
+    }
+
+    /** A stream converting text in charset CHARSET with MACHINE onto OUT,
+     *  copying characters not in its alphabet iff PASSTHROUGH and grouping
+     *  its output in fives iff GROUPED. */
+    EnigmaOutputStream(OutputStream out, Machine machine, Charset charset,
+                       boolean passthrough, boolean grouped) {
+        _writer = new EnigmaWriter(
+            new OutputStreamWriter(out, charset.newEncoder()), machine,
+            passthrough, grouped);
+        _decoder = charset.newDecoder();
+        _bytes = ByteBuffer.allocate(EnigmaFilter.BUFFER_SIZE);
+        _chars = CharBuffer.allocate(EnigmaFilter.BUFFER_SIZE);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        _bytes.put((byte) b);
+        if (!_bytes.hasRemaining()) {
+            decode(false);
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int n = Math.min(len, _bytes.remaining());
+            _bytes.put(b, off, n);
+            off += n;
+            len -= n;
+            decode(false);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        decode(false);
+        _writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        decode(true);
+        _decoder.flush(_chars);
+        writeChars();
+        _writer.close();
+    }
+
+    /** Decode the bytes received so far, passing the characters to
+     *  _writer.  Iff ENDOFINPUT, no more bytes will follow, so incomplete
+     *  characters are errors. */
+    private void decode(boolean endOfInput) throws IOException {
+        _bytes.flip();
+        while (true) {
+            CoderResult result = _decoder.decode(_bytes, _chars, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            writeChars();
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+        _bytes.compact();
+    }
+
+    /** Pass the characters in _chars to _writer and empty it. */
+    private void writeChars() throws IOException {
+        _chars.flip();
+        _writer.write(_chars.array(), 0, _chars.limit());
+        _chars.clear();
+    }
+
+    /** Converts decoded characters. */
+    private final EnigmaWriter _writer;
+
+    /** Decodes the bytes written. */
+    private final CharsetDecoder _decoder;
+
+    /** Bytes received but not yet decoded. */
+    private final ByteBuffer _bytes;
+
+    /** Decoded characters. */
+    private final CharBuffer _chars;
+
+    /** True iff I have been closed. */
+    private boolean _closed;
+}
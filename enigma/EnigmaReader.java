@@ -0,0 +1,126 @@
+package enigma;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/** A Reader that converts the characters read from another Reader through
+ *  a Machine as they are read, in chunks, like a CipherInputStream.  The
+ *  treatment of characters outside the machine's alphabet and the
+ *  grouping of the output are as for EnigmaFilter.
+ *  @author Jacky Tian
+ */
+class EnigmaReader extends FilterReader {
+
+    /** A reader converting the characters of IN with MACHINE, passing
+     *  through characters not in its alphabet, without grouping. */
+    EnigmaReader(Reader in, Machine machine) {
+        this(in, machine, true, false);
+    }
+
+    /** A reader converting the characters of IN with MACHINE, copying
+     *  characters not in its alphabet iff PASSTHROUGH and grouping its
+     *  output in fives iff GROUPED. */
+    EnigmaReader(Reader in, Machine machine, boolean passthrough,
+                 boolean grouped) {
+        super(in);
+        _filter = new EnigmaFilter(machine, passthrough, grouped);
+        _input = new char[EnigmaFilter.BUFFER_SIZE];
+        _output = new char[EnigmaFilter.maxOutput(_input.length)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        synchronized (lock) {
+            return fill() ? _output[_pos++] : -1;
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > cbuf.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        synchronized (lock) {
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, _limit - _pos);
+            System.arraycopy(_output, _pos, cbuf, off, n);
+            _pos += n;
+            return n;
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("skip value is negative");
+        }
+        synchronized (lock) {
+            long skipped = 0;
+            while (skipped < n && fill()) {
+                int k = (int) Math.min(n - skipped, _limit - _pos);
+                _pos += k;
+                skipped += k;
+            }
+            return skipped;
+        }
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        synchronized (lock) {
+            return _pos < _limit;
+        }
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Make sure that converted characters are available, reading and
+     *  converting more input as needed.  Returns false iff the input is
+     *  exhausted and all of it has been delivered. */
+    private boolean fill() throws IOException {
+        while (_pos == _limit) {
+            int n = in.read(_input, 0, _input.length);
+            if (n < 0) {
+                return false;
+            }
+            _pos = 0;
+            _limit = _filter.filter(_input, 0, n, _output, 0);
+        }
+        return true;
+    }
+
+    /** Converts the input. */
+    private final EnigmaFilter _filter;
+
+    /** Buffer for raw input. */
+    private final char[] _input;
+
+    /** Converted characters, of which _pos .. _limit - 1 are yet to be
+     *  delivered. */
+    private final char[] _output;
+
+    /** Position of the next character of _output to deliver. */
+    private int _pos;
+
+    /** End of the converted characters in _output. */
+    private int _limit;
+}
@@ -0,0 +1,148 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for EnigmaReader, EnigmaWriter,
+ *  EnigmaInputStream and EnigmaOutputStream.
+ *  @author Jacky Tian
+ */
+public class EnigmaStreamsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return TEXT with its upper-case letters converted in sequence by a
+     *  fresh machine and its other characters unchanged. */
+    private String expected(String text) {
+        Machine machine = freshMachine(5, STANDARD_SETTINGS);
+        StringBuilder result = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            result.append(UPPER.contains(c)
+                          ? machine.convert(String.valueOf(c)) : c);
+        }
+        return result.toString();
+    }
+
+    /** Return everything read from READER. */
+    private String readAll(Reader reader) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[7];
+        for (int n; (n = reader.read(buffer)) >= 0;) {
+            result.append(buffer, 0, n);
+        }
+        return result.toString();
+    }
+
+    /** Return a long test text. */
+    private String longText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 3000; i += 1) {
+            text.append("Line ").append(i).append(": HELLO, WORLD!\n");
+        }
+        return text.toString();
+    }
+
+    @Test
+    public void readerPassesThrough() throws IOException {
+        String text = longText();
+        assertEquals(expected(text),
+                     readAll(new EnigmaReader(
+                         new StringReader(text),
+                         freshMachine(5, STANDARD_SETTINGS))));
+    }
+
+    @Test
+    public void readerSingleCharacters() throws IOException {
+        String text = "Hello, World!\nABC";
+        Reader reader = new EnigmaReader(new StringReader(text),
+                                         freshMachine(5, STANDARD_SETTINGS));
+        StringBuilder result = new StringBuilder();
+        for (int c; (c = reader.read()) >= 0;) {
+            result.append((char) c);
+        }
+        assertEquals(expected(text), result.toString());
+    }
+
+    @Test
+    public void writerGroupsAndDrops() throws IOException {
+        StringWriter out = new StringWriter();
+        Writer writer =
+            new EnigmaWriter(out, freshMachine(5, STANDARD_SETTINGS), false,
+                             true);
+        writer.write("HELLO WORLD, THIS IS\n");
+        writer.write('A');
+        writer.write(" TEST");
+        writer.close();
+        String letters = freshMachine(5, STANDARD_SETTINGS)
+            .convert("HELLOWORLDTHISISATEST");
+        assertEquals(letters.substring(0, 5) + " " + letters.substring(5, 10)
+                     + " " + letters.substring(10, 15) + " "
+                     + letters.substring(15, 20) + " " + letters.substring(20),
+                     out.toString());
+    }
+
+    @Test
+    public void writerGroupsLines() throws IOException {
+        StringWriter out = new StringWriter();
+        Writer writer =
+            new EnigmaWriter(out, freshMachine(5, STANDARD_SETTINGS), true,
+                             true);
+        writer.write("HELLO WORLD\nABCDEFG\n");
+        writer.flush();
+        String letters = freshMachine(5, STANDARD_SETTINGS)
+            .convert("HELLOWORLDABCDEFG");
+        assertEquals(letters.substring(0, 5) + " " + letters.substring(5, 10)
+                     + "\n" + letters.substring(10, 15) + " "
+                     + letters.substring(15) + "\n", out.toString());
+    }
+
+    @Test
+    public void streamsRoundTrip() throws IOException {
+        String text = longText() + "caf\u00e9 \u00c9T\u00c9 \u4e2d\u6587 END";
+        byte[] plain = text.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream cipher = new ByteArrayOutputStream();
+        OutputStream out =
+            new EnigmaOutputStream(cipher, freshMachine(5, STANDARD_SETTINGS),
+                                   StandardCharsets.UTF_8);
+        out.write(plain, 0, 100);
+        for (int i = 100; i < 200; i += 1) {
+            out.write(plain[i]);
+        }
+        out.write(plain, 200, plain.length - 200 - 9);
+        for (int i = plain.length - 9; i < plain.length; i += 1) {
+            out.write(plain[i]);
+        }
+        out.close();
+        assertEquals(expected(text),
+                     new String(cipher.toByteArray(), StandardCharsets.UTF_8));
+
+        InputStream in =
+            new EnigmaInputStream(new ByteArrayInputStream(
+                cipher.toByteArray()), freshMachine(5, STANDARD_SETTINGS),
+                StandardCharsets.UTF_8);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        for (int n; (n = in.read(buffer)) >= 0;) {
+            result.write(buffer, 0, n);
+        }
+        in.close();
+        assertEquals(text, new String(result.toByteArray(),
+                                      StandardCharsets.UTF_8));
+    }
+}
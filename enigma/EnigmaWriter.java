@@ -0,0 +1,89 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that converts the characters written to it through a Machine
+ *  and writes the results to another Writer, in chunks.  The treatment of
+ *  characters outside the machine's alphabet and the grouping of the
+ *  output are as for EnigmaFilter.
+ *  @author Jacky Tian
+ */
+class EnigmaWriter extends FilterWriter {
+
+    /** A writer converting characters with MACHINE onto OUT, passing
+     *  through characters not in its alphabet, without grouping. */
+    EnigmaWriter(Writer out, Machine machine) {
+        this(out, machine, true, false);
+    }
+
+    /** A writer converting characters with MACHINE onto OUT, copying
+     *  characters not in its alphabet iff PASSTHROUGH and grouping its
+     *  output in fives iff GROUPED. */
+    EnigmaWriter(Writer out, Machine machine, boolean passthrough,
+                 boolean grouped) {
+        super(out);
+        _filter = new EnigmaFilter(machine, passthrough, grouped);
+        _input = new char[EnigmaFilter.BUFFER_SIZE];
+        _output = new char[EnigmaFilter.maxOutput(_input.length)];
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        synchronized (lock) {
+            _input[0] = (char) c;
+            flushInput(1);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > cbuf.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        synchronized (lock) {
+            while (len > 0) {
+                int n = Math.min(len, _input.length);
+                System.arraycopy(cbuf, off, _input, 0, n);
+                flushInput(n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > str.length()) {
+            throw new IndexOutOfBoundsException();
+        }
+        synchronized (lock) {
+            while (len > 0) {
+                int n = Math.min(len, _input.length);
+                str.getChars(off, off + n, _input, 0);
+                flushInput(n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    /** Convert the first LEN characters of _input and write the
+     *  result. */
+    private void flushInput(int len) throws IOException {
+        int n = _filter.filter(_input, 0, len, _output, 0);
+        if (n > 0) {
+            out.write(_output, 0, n);
+        }
+    }
+
+    /** Converts the output. */
+    private final EnigmaFilter _filter;
+
+    /** Buffer for characters to be converted. */
+    private final char[] _input;
+
+    /** Buffer for converted characters. */
+    private final char[] _output;
+}
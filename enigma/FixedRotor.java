@@ -13,5 +13,13 @@ class FixedRotor extends Rotor {
         super(name, perm);
     }
 
-    // FIXME ?
+    /** A fixed rotor like ORIGINAL, sharing its tables. */
+    FixedRotor(FixedRotor original) {
+        super(original);
+    }
+
+    @Override
+    Rotor copy() {
+        return new FixedRotor(this);
+    }
 }
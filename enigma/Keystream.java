@@ -0,0 +1,118 @@
+package enigma;
+
+/** The sequence of permutations performed by a machine from a particular
+ *  starting state, tabulated as it is needed.  The permutation used for
+ *  the Kth character of a message is stored as a table of alphabet-size
+ *  indices, so that once a position has been tabulated, converting a
+ *  character there is one lookup.  Only the first maxLength positions are
+ *  tabulated; beyond that, cursors convert with a copy of the machine.
+ *  Not safe for use by several threads at once.
+ *  @author Jacky Tian
+ */
+class Keystream {
+
+    /** A keystream starting from the current state of MACHINE, which
+     *  becomes the property of this keystream, tabulating at most
+     *  MAXLENGTH positions. */
+    Keystream(Machine machine, int maxLength) {
+        _machine = machine;
+        _alphabet = machine.alphabet();
+        _maxLength = maxLength;
+        _tables = new char[Math.min(maxLength, INITIAL_LENGTH)
+                           * _alphabet.size()];
+    }
+
+    /** Return a new cursor at the start of this keystream. */
+    Cursor cursor() {
+        return new Cursor();
+    }
+
+    /** Return the number of positions tabulated so far. */
+    int length() {
+        return _length;
+    }
+
+    /** Tabulate positions up to (but not including) END, which is at most
+     *  _maxLength. */
+    private void extend(int end) {
+        int n = _alphabet.size();
+        if (end * n > _tables.length) {
+            int capacity = Math.max(end, Math.min(_maxLength,
+                                                  2 * _tables.length / n));
+            char[] tables = new char[capacity * n];
+            System.arraycopy(_tables, 0, tables, 0, _length * n);
+            _tables = tables;
+        }
+        for (; _length < end; _length += 1) {
+            _machine.advance();
+            int base = _length * n;
+            for (int c = 0; c < n; c += 1) {
+                _tables[base + c] = (char) _machine.map(c);
+            }
+        }
+    }
+
+    /** Return a copy of my machine skipped ahead to position POSN, which
+     *  is at least length(). */
+    private Machine machineAt(long posn) {
+        Machine result = _machine.copy();
+        result.skip(posn - _length);
+        return result;
+    }
+
+    /** A position in my keystream from which characters are converted. */
+    class Cursor implements CharConverter {
+
+        @Override
+        public void convert(char[] in, int inOff, char[] out, int outOff,
+                            int len) {
+            int n = _alphabet.size();
+            int i = 0;
+            if (_posn < _maxLength) {
+                int end = (int) Math.min(_maxLength, _posn + len);
+                if (end > _length) {
+                    extend(end);
+                }
+                for (; _posn < end; _posn += 1, i += 1) {
+                    int c = _alphabet.toInt(in[inOff + i]);
+                    out[outOff + i] =
+                        _alphabet.toChar(_tables[(int) _posn * n + c]);
+                }
+            }
+            if (i < len) {
+                if (_overflow == null) {
+                    _overflow = machineAt(_posn);
+                }
+                _overflow.convert(in, inOff + i, out, outOff + i, len - i);
+                _posn += len - i;
+            }
+        }
+
+        /** Number of characters converted through this cursor. */
+        private long _posn;
+
+        /** Machine positioned at _posn, used past the tabulated part of the
+         *  keystream, or null if not yet needed. */
+        private Machine _overflow;
+    }
+
+    /** Initial number of positions for which space is allocated. */
+    private static final int INITIAL_LENGTH = 256;
+
+    /** The machine generating the keystream, positioned after the last
+     *  tabulated position. */
+    private final Machine _machine;
+
+    /** The alphabet of _machine. */
+    private final Alphabet _alphabet;
+
+    /** Maximum number of positions tabulated. */
+    private final int _maxLength;
+
+    /** The permutation for position K maps C to _tables[K * n + C], where
+     *  n is the alphabet size. */
+    private char[] _tables;
+
+    /** Number of positions tabulated. */
+    private int _length;
+}
@@ -0,0 +1,87 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/** A bounded cache of keystreams keyed by settings line, evicting the
+ *  least recently used keystream when full.  A block of messages whose
+ *  settings line has been seen before is converted through the tables
+ *  already built for it, without setting up a machine.  Not safe for use
+ *  by several threads at once.
+ *  @author Jacky Tian
+ */
+class KeystreamCache {
+
+    /** A cache holding at most CAPACITY keystreams, each tabulating at most
+     *  MAXLENGTH positions.  SETUP returns a new machine set up according
+     *  to a given settings line. */
+    KeystreamCache(int capacity, int maxLength,
+                   Function<String, Machine> setup) {
+        _capacity = capacity;
+        _maxLength = maxLength;
+        _setup = setup;
+        _keystreams = new LinkedHashMap<String, Keystream>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Keystream> eldest) {
+                if (size() > _capacity) {
+                    _evictions += 1;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /** Return the keystream for the settings line SETTINGS, creating it if
+     *  it is not cached. */
+    Keystream get(String settings) {
+        String key = settings.trim();
+        Keystream result = _keystreams.get(key);
+        if (result != null) {
+            _hits += 1;
+        } else {
+            _misses += 1;
+            result = new Keystream(_setup.apply(key), _maxLength);
+            _keystreams.put(key, result);
+        }
+        return result;
+    }
+
+    /** Return the number of calls to get that found a cached keystream. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to get that created a keystream. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return the number of keystreams evicted to make room for others. */
+    long evictions() {
+        return _evictions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("keystream cache: %d hits, %d misses, "
+                             + "%d evictions", _hits, _misses, _evictions);
+    }
+
+    /** Maximum number of cached keystreams. */
+    private final int _capacity;
+
+    /** Maximum number of positions tabulated by each keystream. */
+    private final int _maxLength;
+
+    /** Creates a machine set up according to a settings line. */
+    private final Function<String, Machine> _setup;
+
+    /** The cached keystreams, in order of last use. */
+    private final LinkedHashMap<String, Keystream> _keystreams;
+
+    /** Counters for hits(), misses() and evictions(). */
+    private long _hits, _misses, _evictions;
+}
@@ -0,0 +1,68 @@
+package enigma;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeystreamCache class.
+ *  @author Jacky Tian
+ */
+public class KeystreamCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine set up according to SETTINGS, which contains the
+     *  rotor names and positions separated by blanks. */
+    private static Machine setUp(String settings) {
+        String[] words = settings.split(" ");
+        Machine machine = new Machine(UPPER, 5, 3, ALL_ROTORS);
+        machine.insertRotors(Arrays.copyOf(words, 5));
+        machine.setRotors(words[5]);
+        return machine.copy();
+    }
+
+    /** Cache under test, holding two keystreams of 10 positions. */
+    private KeystreamCache cache =
+        new KeystreamCache(2, 10, KeystreamCacheTest::setUp);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertMatchesMachine() {
+        String key = "B BETA III IV I AXLE";
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        String expected = setUp(key).convert(msg);
+        for (int k = 0; k < 2; k += 1) {
+            CharConverter cursor = cache.get(key).cursor();
+            char[] buf = msg.toCharArray();
+            cursor.convert(buf, 0, buf, 0, 4);
+            cursor.convert(buf, 4, buf, 4, buf.length - 4);
+            assertEquals("Wrong keystream conversion", expected,
+                         new String(buf));
+        }
+        assertEquals("Wrong tabulated length", 10, cache.get(key).length());
+    }
+
+    @Test
+    public void testCounters() {
+        cache.get("B BETA III IV I AXLE");
+        cache.get("B BETA III IV I AXLE");
+        cache.get("B BETA I II III AAAA");
+        cache.get("B BETA III IV I AXLE");
+        cache.get("B BETA I II IV AAAA");
+        cache.get("B BETA I II III AAAA");
+        assertEquals("Wrong hits", 2, cache.hits());
+        assertEquals("Wrong misses", 4, cache.misses());
+        assertEquals("Wrong evictions", 2, cache.evictions());
+    }
+
+}
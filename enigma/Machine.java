@@ -1,26 +1,122 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.HashMap;
 import java.util.Collection;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import static enigma.EnigmaException.*;
 
 /** Class that represents a complete enigma machine.
  *  @author Jacky Tian
  */
-class Machine {
+class Machine implements CharConverter {
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        if (numRotors <= 1 || numRotors > MAX_ROTORS) {
+            throw error("bad number of rotor slots: %d", numRotors);
+        }
+        if (pawls < 0 || pawls >= numRotors) {
+            throw error("bad number of pawls: %d", pawls);
+        }
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotors = allRotors.toArray();
+        _rotorIndex = new HashMap<>();
+        for (int j = 0; j < _allRotors.length; j++) {
+            _rotorIndex.put(((Rotor) _allRotors[j]).name(), j);
+        }
         _rotors = new Rotor[numRotors];
+        _plugboard = new Permutation("", alpha);
+        _plugs = _plugboard.table().clone();
+        _inner = new int[alpha.size()];
+        _outer = new int[alpha.size()];
+    }
+
+    /** A machine in the same state as ORIGINAL whose rotors are copies of
+     *  ORIGINAL's, so that the two can convert independently.  The
+     *  available rotors are copied only if rotors are inserted. */
+    private Machine(Machine original) {
+        _alphabet = original._alphabet;
+        _numRotors = original._numRotors;
+        _pawls = original._pawls;
+        _allRotors = original._allRotors;
+        _rotorIndex = original._rotorIndex;
+        _sharedRotors = true;
+        _rotors = new Rotor[_numRotors];
+        for (int i = 0; i < _numRotors; i += 1) {
+            if (original._rotors[i] != null) {
+                _rotors[i] = original._rotors[i].copy();
+            }
+        }
+        _plugboard = original._plugboard;
+        _plugs = original._plugs.clone();
+        _stack = original._stack;
+        _stackValid = original._stackValid;
+        _inner = new int[_alphabet.size()];
+        _outer = new int[_alphabet.size()];
+    }
+
+    /** Return a copy of me in my current state that can be used
+     *  independently of me (e.g., in another thread).  Compiled tables
+     *  are shared. */
+    Machine copy() {
+        return new Machine(this);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the rotors available for insertion. */
+    List<Rotor> availableRotors() {
+        ArrayList<Rotor> result = new ArrayList<>();
+        for (Object rotor : _allRotors) {
+            result.add((Rotor) rotor);
+        }
+        return result;
+    }
+
+    /** Return every arrangement of my available rotors that can be
+     *  inserted into me: a reflector, non-moving rotors in the slots
+     *  without pawls, and moving rotors in the rest, all distinct.  Each
+     *  names the rotors of every slot, reflector first. */
+    List<String[]> rotorOrders() {
+        List<Rotor> available = availableRotors();
+        ArrayList<String[]> result = new ArrayList<>();
+        addOrders(available, new String[_numRotors],
+                  new boolean[available.size()], 0, result);
+        return result;
+    }
+
+    /** Add to RESULT the arrangements of AVAILABLE whose first SLOT slots
+     *  are as in ORDER, where USED marks the rotors already placed. */
+    private void addOrders(List<Rotor> available, String[] order,
+                           boolean[] used, int slot, List<String[]> result) {
+        if (slot == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        boolean pawled = slot >= _numRotors - _pawls;
+        for (int j = 0; j < available.size(); j += 1) {
+            Rotor rotor = available.get(j);
+            if (used[j] || rotor.rotates() != pawled
+                || rotor.reflecting() != (slot == 0)) {
+                continue;
+            }
+            used[j] = true;
+            order[slot] = rotor.name();
+            addOrders(available, order, used, slot + 1, result);
+            used[j] = false;
+        }
     }
 
     /** Return the number of rotor slots I have. */
@@ -37,83 +133,476 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
-        for (int i = 0; i < rotors.length; i++) {
+        if (_sharedRotors) {
+            Object[] copies = new Object[_allRotors.length];
             for (int j = 0; j < _allRotors.length; j++) {
-                if ((rotors[i].toString()).equals((((Rotor)_allRotors[j]).name()))) {
-                    _rotors[i] = (Rotor) _allRotors[j];
-                } 
+                copies[j] = ((Rotor) _allRotors[j]).copy();
             }
+            _allRotors = copies;
+            _sharedRotors = false;
         }
         if (_rotors.length != rotors.length) {
-            throw new EnigmaException("Misnamed rotors");
+            throw new EnigmaException("Wrong number of rotors");
         }
+        for (int i = 0; i < rotors.length; i++) {
+            Integer j = _rotorIndex.get(rotors[i]);
+            if (j == null) {
+                throw new EnigmaException("Misnamed rotors");
+            }
+            Rotor found = (Rotor) _allRotors[j];
+            if (found.rotates() != (i >= _numRotors - _pawls)) {
+                throw error("rotor %s cannot go in slot %d", rotors[i], i);
+            }
+            _rotors[i] = found;
+        }
+        _stackValid = _outerValid = _innerValid = false;
     }
 
-    /** Set my rotors according to SETTING, which must be a string of four
-     *  upper-case letters. The first letter refers to the leftmost
-     *  rotor setting (not counting the reflector).  */
+    /** Set my rotors according to SETTING, which must be a string of
+     *  numRotors() - 1 characters of my alphabet. The first character
+     *  refers to the leftmost rotor setting (not counting the
+     *  reflector).  */
     void setRotors(String setting) {
-        if (setting.length() != 4) {
+        if (setting.length() != _numRotors - 1) {
             throw new EnigmaException("Initial positions string wrong length");
         }
-        for (int i = 1; i < 5; i++) {
+        for (int i = 1; i < _numRotors; i++) {
             if (!_alphabet.contains(setting.charAt(i-1))) {
                 throw new EnigmaException("Initial positions string not in alphabet");
             }
             _rotors[i].set(setting.charAt(i-1));
-        } // FIXME
+        }
+        _stackValid = _outerValid = _innerValid = false;
+    }
+
+    /** Set my rotors so that the rotor in slot I has setting
+     *  SETTINGS[I - 1], as for setRotors(String) but without allocating.
+     *  The compiled tables of the rotors that never move are kept if
+     *  their settings are unchanged. */
+    void setRotors(int[] settings) {
+        if (settings.length != _numRotors - 1) {
+            throw error("Initial positions wrong length");
+        }
+        for (int i = 1; i < _numRotors; i += 1) {
+            int posn = settings[i - 1];
+            if (posn < 0 || posn >= _alphabet.size()) {
+                throw error("Initial position out of range: %d", posn);
+            }
+            if (i < stackTop() && _rotors[i].setting() != posn) {
+                _stackValid = false;
+            }
+            _rotors[i].set(posn);
+        }
+        _outerValid = _innerValid = false;
+    }
+
+    /** Return my plugboard. */
+    Permutation plugboard() {
+        if (_plugboard == null) {
+            _plugboard = new Permutation(_plugs.clone(), _alphabet);
+        }
+        return _plugboard;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
-        _plugboard = plugboard; // FIXME
+        if (plugboard.size() != _plugs.length) {
+            throw error("plugboard has wrong size");
+        }
+        System.arraycopy(plugboard.table(), 0, _plugs, 0, _plugs.length);
+        _plugboard = plugboard;
+    }
+
+    /** Return a new state holding my rotor settings and plugboard. */
+    MachineState saveState() {
+        MachineState state = new MachineState(_numRotors, _plugs.length);
+        saveState(state);
+        return state;
+    }
+
+    /** Store my rotor settings and plugboard in STATE, which must have
+     *  been made for a machine of my shape.  Does not allocate. */
+    void saveState(MachineState state) {
+        int[] settings = state.settings(), plugs = state.plugs();
+        if (settings.length != _numRotors - 1
+            || plugs.length != _plugs.length) {
+            throw error("machine state has wrong shape");
+        }
+        for (int i = 1; i < _numRotors; i += 1) {
+            settings[i - 1] = _rotors[i].setting();
+        }
+        System.arraycopy(_plugs, 0, plugs, 0, _plugs.length);
+    }
+
+    /** Set my rotor settings and plugboard to those in STATE, which must
+     *  have been made for a machine of my shape.  My rotors stay the ones
+     *  inserted.  Takes time proportional to numRotors() plus the size of
+     *  the plugboard, and does not allocate. */
+    void restoreState(MachineState state) {
+        int[] plugs = state.plugs();
+        if (plugs.length != _plugs.length) {
+            throw error("machine state has wrong shape");
+        }
+        setRotors(state.settings());
+        System.arraycopy(plugs, 0, _plugs, 0, _plugs.length);
+        _plugboard = null;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        boolean rotor_4 = false;
-        boolean rotor_3 = false;
-        if (_rotors[4].atNotch()) {
-            rotor_4 = true;
+        advance();
+        return map(c);
+    }
+
+    /** Return the number of times one of my rotors has moved by one
+     *  position since I was made, as the rotors step (but not as they are
+     *  set). */
+    long rotorSteps() {
+        return _rotorSteps;
+    }
+
+    /** Advance the rotors by one step, as convert(int) does before
+     *  converting a character. */
+    void advance() {
+        advanceRotors();
+    }
+
+    /** Returns the result of converting C (as an index in the range
+     *  0..alphabet size - 1) with the rotors in their current positions,
+     *  without advancing them. */
+    int map(int c) {
+        if (!_innerValid) {
+            compileInner();
         }
-        if (_rotors[3].atNotch()) {
-            rotor_3 = true;
+        Rotor fast = _rotors[_numRotors - 1];
+        int result = fast.convertForward(_plugs[c]);
+        result = fast.convertBackward(_inner[result]);
+        return _plugs[result];
+    }
+
+    /** Advance me STEPS times, storing in TABLES[START + K * N + C],
+     *  where N is the size of my alphabet, the result of map(C) after
+     *  K + 1 advances.  This is the sequence of permutations that
+     *  converting STEPS characters would apply, tabulated without
+     *  allocating. */
+    void tabulate(int steps, int[] tables, int start) {
+        int n = _alphabet.size();
+        for (int k = 0, base = start; k < steps; k += 1, base += n) {
+            advanceRotors();
+            for (int c = 0; c < n; c += 1) {
+                tables[base + c] = map(c);
+            }
         }
-        if (rotor_4 == true) {
-            _rotors[3].advance();
+    }
+
+    /** Return the slot of the leftmost rotor that may move and is not the
+     *  rightmost rotor.  The rotors to its left never move. */
+    private int stackTop() {
+        return Math.min(_numRotors - _pawls, _numRotors - 1);
+    }
+
+    /** Set _stack to the composite permutation performed by the rotors
+     *  that never move, from entering the rightmost of them to leaving
+     *  it again after the reflector. */
+    private void compileStack() {
+        Permutation path = _rotors[0].currentPermutation();
+        for (int i = 1; i < stackTop(); i += 1) {
+            Permutation rotor = _rotors[i].currentPermutation();
+            path = rotor.compose(path).compose(rotor.inverse());
+        }
+        _stack = path.table();
+        _stackValid = true;
+    }
+
+    /** Set _outer to the composite permutation performed by the rotors to
+     *  the left of the second rotor from the right, from entering the
+     *  rightmost of them to leaving it again.  This only changes when one
+     *  of those rotors moves, which is much rarer than a move of the
+     *  second rotor from the right. */
+    private void compileOuter() {
+        if (!_stackValid) {
+            compileStack();
         }
-        if (rotor_3 == true) {
-            _rotors[2].advance();
-            _rotors[3].advance();
+        int top = stackTop(), middle = _numRotors - 2;
+        for (int x = 0; x < _outer.length; x += 1) {
+            int y = x;
+            for (int i = middle - 1; i >= top; i -= 1) {
+                y = _rotors[i].convertForward(y);
+            }
+            y = _stack[y];
+            for (int i = top; i < middle; i += 1) {
+                y = _rotors[i].convertBackward(y);
+            }
+            _outer[x] = y;
         }
-        _rotors[_numRotors-1].advance();
+        _outerValid = true;
+    }
 
-        int result = _plugboard.permute(c);
-        for (int i = _numRotors-1; i >= 0; i--) {
-            result = _rotors[i].convertForward(result); 
+    /** Set _inner to the composite permutation performed by all rotors
+     *  but the rightmost one at their current settings, from entering the
+     *  second rotor from the right to leaving it again.  This only
+     *  changes when a rotor other than the rightmost one moves. */
+    private void compileInner() {
+        if (stackTop() > _numRotors - 2) {
+            if (!_stackValid) {
+                compileStack();
+            }
+            System.arraycopy(_stack, 0, _inner, 0, _inner.length);
+        } else {
+            if (!_outerValid) {
+                compileOuter();
+            }
+            Rotor middle = _rotors[_numRotors - 2];
+            for (int x = 0; x < _inner.length; x += 1) {
+                _inner[x] =
+                    middle.convertBackward(_outer[middle.convertForward(x)]);
+            }
         }
-        for (int i = 1; i < _numRotors; i++) {
-            result = _rotors[i].convertBackward(result);
+        _innerValid = true;
+    }
+
+    /** Return the composite permutation performed by all rotors but the
+     *  rightmost one at their current settings (see compileInner).  The
+     *  table is reused as the rotors move, and must not be modified. */
+    int[] inner() {
+        if (!_innerValid) {
+            compileInner();
+        }
+        return _inner;
+    }
+
+    /** Return the composite permutation performed by the rotors to the
+     *  left of the second rotor from the right (see compileOuter), which
+     *  must be one of my moving rotors.  The table is reused as the rotors
+     *  move, and must not be modified. */
+    int[] outer() {
+        if (_pawls < 2) {
+            throw error("need at least two moving rotors");
+        }
+        if (!_outerValid) {
+            compileOuter();
+        }
+        return _outer;
+    }
+
+    /** Advance the rotors by one step, as happens before each character
+     *  is converted.  Each moving rotor other than the leftmost one that
+     *  is at a notch advances together with its left neighbour (which
+     *  gives the double step of the middle rotors), and the rightmost
+     *  rotor always advances.  Slot I is represented by bit I of a mask,
+     *  so that the whole step is a few bit operations. */
+    private void advanceRotors() {
+        if (_pawls == 0) {
+            return;
+        }
+        long notched = 0;
+        for (int i = _numRotors - _pawls + 1; i < _numRotors; i += 1) {
+            if (_rotors[i].atNotch()) {
+                notched |= 1L << i;
+            }
+        }
+        long fast = 1L << (_numRotors - 1);
+        long moving = notched | (notched >>> 1) | fast;
+        if (moving != fast) {
+            _innerValid = false;
+            if ((moving & (fast >>> 1) - 1) != 0) {
+                _outerValid = false;
+            }
+        }
+        _rotorSteps += Long.bitCount(moving);
+        for (; moving != 0; moving &= moving - 1) {
+            _rotors[Long.numberOfTrailingZeros(moving)].advance();
+        }
+    }
+
+    /** Advance the rotors as if N characters had been converted, without
+     *  stepping through each of them.  Between notch events only the
+     *  rightmost rotor moves, so it jumps straight to its next notch; the
+     *  settings of the moving rotors are also periodic, so once a repeated
+     *  state is found (Brent's cycle detection) whole periods are skipped.
+     *  The cost is thus bounded by the period of the rotors rather than
+     *  by N. */
+    void skip(long n) {
+        if (n < 0) {
+            throw error("cannot skip a negative number of characters");
+        }
+        if (_pawls == 0) {
+            return;
+        }
+        Rotor fast = _rotors[_numRotors - 1];
+        int[] tortoise = new int[_pawls];
+        saveMovingSettings(tortoise);
+        long tortoiseAt = 0, tortoiseSteps = _rotorSteps, power = 1;
+        long lambda = 0;
+        boolean reduced = false;
+        long done = 0;
+        while (done < n) {
+            int toNotch = fast.stepsToNotch();
+            if (toNotch == 0 || triggersAtNotch()) {
+                advanceRotors();
+                done += 1;
+            } else {
+                long jump = n - done;
+                if (toNotch > 0 && toNotch < jump) {
+                    jump = toNotch;
+                }
+                fast.set((int) ((fast.setting() + jump) % fast.size()));
+                _rotorSteps += jump;
+                done += jump;
+            }
+            if (!reduced) {
+                lambda += 1;
+                if (sameMovingSettings(tortoise)) {
+                    long period = done - tortoiseAt;
+                    _rotorSteps += (n - done) / period
+                        * (_rotorSteps - tortoiseSteps);
+                    n = done + (n - done) % period;
+                    reduced = true;
+                } else if (lambda == power) {
+                    saveMovingSettings(tortoise);
+                    tortoiseAt = done;
+                    tortoiseSteps = _rotorSteps;
+                    power *= 2;
+                    lambda = 0;
+                }
+            }
+        }
+    }
+
+    /** Return true iff the next advance moves a rotor other than the
+     *  rightmost one. */
+    boolean atTurnover() {
+        return _pawls > 1
+            && (triggersAtNotch() || _rotors[_numRotors - 1].atNotch());
+    }
+
+    /** Return true iff one of my moving rotors other than the leftmost and
+     *  rightmost ones is at a notch, so that the next step moves more than
+     *  the rightmost rotor. */
+    private boolean triggersAtNotch() {
+        for (int i = _numRotors - _pawls + 1; i < _numRotors - 1; i += 1) {
+            if (_rotors[i].atNotch()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Store the settings of my moving rotors in SETTINGS. */
+    private void saveMovingSettings(int[] settings) {
+        for (int i = 0; i < _pawls; i += 1) {
+            settings[i] = _rotors[_numRotors - _pawls + i].setting();
         }
-        result = _plugboard.permute(result);
-        return result;
-        // FIXME
+    }
+
+    /** Return true iff the settings of my moving rotors are SETTINGS. */
+    private boolean sameMovingSettings(int[] settings) {
+        for (int i = 0; i < _pawls; i += 1) {
+            if (settings[i] != _rotors[_numRotors - _pawls + i].setting()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i++) {
-            char converted = _alphabet.toChar(convert(_alphabet.toInt(msg.charAt(i))));
-            result += converted;
+        char[] buffer = msg.toCharArray();
+        convert(buffer, 0, buffer, 0, buffer.length);
+        return new String(buffer);
+    }
+
+    /** Convert the LEN characters of IN starting at INOFF, storing the
+     *  results in OUT starting at OUTOFF and updating the state of the
+     *  rotors accordingly.  IN and OUT may be the same array, in which
+     *  case the conversion is done in place.  The conversion is done in
+     *  this thread; see convertParallel. */
+    @Override
+    public void convert(char[] in, int inOff, char[] out, int outOff,
+                        int len) {
+        checkRange(in, inOff, out, outOff, len);
+        convertSequentially(in, inOff, out, outOff, len);
+    }
+
+    /** Convert as for convert, but if LEN is at least PARALLEL_THRESHOLD
+     *  and the common ForkJoinPool has more than one thread, in chunks
+     *  on that pool (see below).  Callers that already run on a pool of
+     *  their own should use convert instead. */
+    void convertParallel(char[] in, int inOff, char[] out, int outOff,
+                         int len) {
+        checkRange(in, inOff, out, outOff, len);
+        if (len >= PARALLEL_THRESHOLD
+            && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            convertParallel(in, inOff, out, outOff, len,
+                            ForkJoinPool.commonPool());
+        } else {
+            convertSequentially(in, inOff, out, outOff, len);
+        }
+    }
+
+    /** Throw IndexOutOfBoundsException unless the LEN characters of IN
+     *  starting at INOFF and of OUT starting at OUTOFF exist. */
+    private static void checkRange(char[] in, int inOff, char[] out,
+                                   int outOff, int len) {
+        if (inOff < 0 || outOff < 0 || len < 0
+            || inOff + len > in.length || outOff + len > out.length) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /** Convert the LEN characters of IN starting at INOFF into OUT
+     *  starting at OUTOFF, as for convert, by splitting the range into
+     *  chunks that are converted concurrently in POOL.  Each chunk uses
+     *  a copy of me skipped ahead to the chunk's offset, and I am left in
+     *  the state I would have after a sequential conversion. */
+    void convertParallel(char[] in, int inOff, char[] out, int outOff,
+                         int len, ForkJoinPool pool) {
+        int chunk = Math.max(MIN_CHUNK, len / (4 * pool.getParallelism()));
+        pool.invoke(new ChunkedConversion(copy(), in, inOff, out, outOff,
+                                          len, chunk));
+        skip(len);
+    }
+
+    /** Convert the LEN characters of IN starting at INOFF into OUT
+     *  starting at OUTOFF one at a time in this thread. */
+    void convertSequentially(char[] in, int inOff, char[] out, int outOff,
+                             int len) {
+        for (int i = 0; i < len; i += 1) {
+            out[outOff + i] =
+                _alphabet.toChar(convert(_alphabet.toInt(in[inOff + i])));
         }
-        return result;
-        // FIXME
     }
 
+    /** Convert as many of the remaining characters of IN as fit in the
+     *  remaining space of OUT, advancing the positions of both buffers
+     *  and updating the state of the rotors accordingly. */
+    void convert(CharBuffer in, CharBuffer out) {
+        int len = Math.min(in.remaining(), out.remaining());
+        if (in.hasArray() && out.hasArray() && !out.isReadOnly()) {
+            convert(in.array(), in.arrayOffset() + in.position(),
+                    out.array(), out.arrayOffset() + out.position(), len);
+            in.position(in.position() + len);
+            out.position(out.position() + len);
+        } else {
+            for (int i = 0; i < len; i += 1) {
+                out.put(_alphabet.toChar(convert(_alphabet.toInt(in.get()))));
+            }
+        }
+    }
+
+    /** Maximum number of rotor slots. */
+    static final int MAX_ROTORS = 63;
+
+    /** Length of message at and above which convertParallel works on
+     *  several chunks concurrently. */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    /** Smallest chunk converted as a separate task. */
+    static final int MIN_CHUNK = 1 << 13;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -126,9 +615,46 @@ class Machine {
     /** The array of rotors that formats the machine. */
     public Rotor[] _rotors;
 
-    /** The initial plugboard which includes steckered pairs. */
+    /** The initial plugboard which includes steckered pairs, or null if
+     *  it must be rebuilt from _plugs (after restoreState). */
     private Permutation _plugboard;
 
+    /** The plugboard as a table, which map uses.  Owned by me and changed
+     *  in place. */
+    private final int[] _plugs;
+
     /** An ArrayList containing all possible rotors that can be used. */
     private Object[] _allRotors;
+
+    /** The composite permutation of the rotors that never move (see
+     *  compileStack).  Shared with copies, so never modified in place. */
+    private int[] _stack;
+
+    /** True iff _stack is up to date. */
+    private boolean _stackValid;
+
+    /** The composite permutation of all rotors but the rightmost (see
+     *  compileInner). */
+    private final int[] _inner;
+
+    /** Number of single-position rotor movements (see rotorSteps). */
+    private long _rotorSteps;
+
+    /** True iff _inner is up to date. */
+    private boolean _innerValid;
+
+    /** The composite permutation of the rotors to the left of the second
+     *  from the right (see compileOuter). */
+    private final int[] _outer;
+
+    /** True iff _outer is up to date. */
+    private boolean _outerValid;
+
+    /** Maps the name of each available rotor to its index in
+     *  _allRotors. */
+    private final HashMap<String, Integer> _rotorIndex;
+
+    /** True iff _allRotors is shared with the machine I was copied from,
+     *  and so must be copied before any of its rotors are inserted. */
+    private boolean _sharedRotors;
 }
@@ -0,0 +1,50 @@
+package enigma;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** A pool of copies of one machine, for threads that each need a machine
+ *  for a while (e.g., the sessions of a Server).  Copies share the
+ *  compiled rotor tables of the original, and are kept for reuse once
+ *  released, so a busy pool stops allocating.
+ *  @author Jacky Tian
+ */
+class MachinePool {
+
+    /** A pool of copies of TEMPLATE, which is not itself handed out. */
+    MachinePool(Machine template) {
+        _template = template;
+    }
+
+    /** Return a machine for the caller's exclusive use, until it is
+     *  released.  Its rotors and settings are those of whoever used it
+     *  last. */
+    Machine acquire() {
+        Machine machine = _idle.poll();
+        if (machine == null) {
+            machine = _template.copy();
+            _created.incrementAndGet();
+        }
+        return machine;
+    }
+
+    /** Return MACHINE, obtained from acquire, to the pool. */
+    void release(Machine machine) {
+        _idle.offer(machine);
+    }
+
+    /** Return the number of machines this pool has created. */
+    int created() {
+        return _created.get();
+    }
+
+    /** The machine of which mine are copies. */
+    private final Machine _template;
+
+    /** Machines released and not yet acquired again. */
+    private final ConcurrentLinkedQueue<Machine> _idle =
+        new ConcurrentLinkedQueue<>();
+
+    /** Number of machines created. */
+    private final AtomicInteger _created = new AtomicInteger();
+}
@@ -0,0 +1,77 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The variable state of a Machine with given rotors inserted: the
+ *  settings of its rotors and its plugboard, held as plain tables so that
+ *  searches can save, change and restore machines without allocating
+ *  (see Machine.saveState and Machine.restoreState).
+ *  @author Jacky Tian
+ */
+final class MachineState {
+
+    /** A state for machines with NUMROTORS rotor slots and an alphabet of
+     *  SIZE characters: all rotors at setting 0 and no plugs. */
+    MachineState(int numRotors, int size) {
+        if (numRotors <= 1 || size <= 0) {
+            throw error("bad machine state shape");
+        }
+        _settings = new int[numRotors - 1];
+        _plugs = new int[size];
+        for (int c = 0; c < size; c += 1) {
+            _plugs[c] = c;
+        }
+    }
+
+    /** Return the settings of the rotors in slots 1 .. numRotors - 1, in
+     *  order.  The array is mine, and may be changed in place. */
+    int[] settings() {
+        return _settings;
+    }
+
+    /** Return the plugboard, as a table mapping each character index to
+     *  its partner (itself if unplugged).  The array is mine, and may be
+     *  changed in place, but must remain a permutation. */
+    int[] plugs() {
+        return _plugs;
+    }
+
+    /** Set me to a copy of OTHER, which must have my shape. */
+    void copyFrom(MachineState other) {
+        if (other._settings.length != _settings.length
+            || other._plugs.length != _plugs.length) {
+            throw error("machine states of different shapes");
+        }
+        System.arraycopy(other._settings, 0, _settings, 0, _settings.length);
+        System.arraycopy(other._plugs, 0, _plugs, 0, _plugs.length);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof MachineState)) {
+            return false;
+        }
+        MachineState other = (MachineState) obj;
+        return Arrays.equals(_settings, other._settings)
+            && Arrays.equals(_plugs, other._plugs);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(_settings) + Arrays.hashCode(_plugs);
+    }
+
+    @Override
+    public String toString() {
+        return "settings " + Arrays.toString(_settings)
+            + ", plugs " + Arrays.toString(_plugs);
+    }
+
+    /** Rotor settings, slot 1 first. */
+    private final int[] _settings;
+
+    /** Plugboard table. */
+    private final int[] _plugs;
+}
@@ -1,8 +1,10 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -71,4 +73,169 @@ public class MachineTest {
     	machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
     	assertEquals("Wrong convert", "FROM", machine.convert("QVPQ"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConvertBuffers() {
+        setMachine(UPPER, 5, 3, rotors);
+        machine.insertRotors(insert);
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        char[] out = new char[6];
+        machine.convert("xFROMx".toCharArray(), 1, out, 1, 4);
+        assertEquals("Wrong array convert", "QVPQ", new String(out, 1, 4));
+        CharBuffer in = CharBuffer.wrap("HISSHOULDER");
+        CharBuffer dest = CharBuffer.allocate(4);
+        machine.convert(in, dest);
+        assertEquals("Wrong input position", 4, in.position());
+        assertEquals("Wrong buffer convert", "SOKO", new String(dest.array()));
+        assertEquals("Wrong continued convert", "ILPUBKJ",
+                     machine.convert(in.toString()));
+    }
+
+    /** Return the settings of the rotors in slots 1 and up. */
+    private String settings() {
+        String result = "";
+        for (int i = 1; i < machine.numRotors(); i += 1) {
+            result += UPPER.toChar(machine._rotors[i].setting());
+        }
+        return result;
+    }
+
+    @Test
+    public void testSkip() {
+        String[] starts = {"AXLE", "AAUU", "ZZEV", "AADU"};
+        long[] counts = {0, 1, 25, 26, 677, 16900, 40000};
+        for (String start : starts) {
+            for (long count : counts) {
+                setMachine(UPPER, 5, 3, rotors);
+                machine.insertRotors(insert);
+                machine.setRotors(start);
+                for (long k = 0; k < count; k += 1) {
+                    machine.convert(0);
+                }
+                String expected = settings();
+                machine.setRotors(start);
+                machine.skip(count);
+                assertEquals("Wrong skip of " + count + " from " + start,
+                             expected, settings());
+            }
+        }
+    }
+
+    @Test
+    public void testConvertParallel() {
+        setMachine(UPPER, 5, 3, rotors);
+        machine.insertRotors(insert);
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        char[] msg = new char[3 * Machine.PARALLEL_THRESHOLD + 7];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = UPPER.toChar((i * 7 + i / 26) % 26);
+        }
+        machine.setRotors("AXLE");
+        char[] expected = new char[msg.length];
+        machine.convertSequentially(msg, 0, expected, 0, msg.length);
+        String endSettings = settings();
+        machine.setRotors("AXLE");
+        char[] converted = new char[msg.length];
+        machine.convertParallel(msg, 0, converted, 0, msg.length,
+                                new ForkJoinPool(4));
+        assertEquals("Wrong parallel convert",
+                     new String(expected), new String(converted));
+        assertEquals("Wrong settings after parallel convert",
+                     endSettings, settings());
+        machine.setRotors("AXLE");
+        machine.convertParallel(msg, 0, converted, 0, msg.length);
+        assertEquals("Wrong convertParallel",
+                     new String(expected), new String(converted));
+        assertEquals("Wrong settings after convertParallel",
+                     endSettings, settings());
+    }
+
+    @Test
+    public void testCopyIsIndependent() {
+        setMachine(UPPER, 5, 3, rotors);
+        machine.insertRotors(insert);
+        machine.setRotors("AXLE");
+        Machine copy = machine.copy();
+        copy.insertRotors(insert);
+        copy.setRotors("ZZZZ");
+        assertEquals("Copy changed original", "AXLE", settings());
+        assertEquals("Copy changed catalog", 4, rotors.get(2).setting());
+        assertNotSame(rotors.get(2), copy._rotors[4]);
+    }
+
+    @Test
+    public void testSaveRestoreState() {
+        setMachine(UPPER, 5, 3, rotors);
+        machine.insertRotors(insert);
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        MachineState start = machine.saveState();
+        assertArrayEquals(new int[] {0, 23, 11, 4}, start.settings());
+        assertEquals(UPPER.toInt('Q'), start.plugs()[UPPER.toInt('H')]);
+        String first = machine.convert("FROMHISSHOULDERHIAWATHA");
+        MachineState later = machine.saveState();
+        machine.restoreState(start);
+        assertEquals("Wrong settings after restore", "AXLE", settings());
+        assertEquals("Wrong conversion after restore", first,
+                     machine.convert("FROMHISSHOULDERHIAWATHA"));
+        MachineState now = new MachineState(5, 26);
+        machine.saveState(now);
+        assertEquals(later, now);
+    }
+
+    @Test
+    public void testRestoreStatePlugboard() {
+        setMachine(UPPER, 5, 3, rotors);
+        machine.insertRotors(insert);
+        machine.setRotors("AXLE");
+        MachineState state = machine.saveState();
+        int[] plugs = state.plugs();
+        plugs[0] = 1;
+        plugs[1] = 0;
+        machine.restoreState(state);
+        assertEquals(1, machine.plugboard().permute(0));
+        Machine expected = machine.copy();
+        expected.setPlugboard(new Permutation("(AB)", UPPER));
+        expected.setRotors("AXLE");
+        assertEquals(expected.convert("HELLOWORLD"),
+                     machine.convert("HELLOWORLD"));
+    }
+
+    @Test
+    public void testDoubleStep() {
+        setMachine(UPPER, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "BETA", "I", "II", "III"});
+        machine.setRotors("AADU");
+        machine.convert(0);
+        assertEquals("Wrong first step", "AADV", settings());
+        machine.convert(0);
+        assertEquals("Wrong second step", "AAEW", settings());
+        machine.convert(0);
+        assertEquals("Wrong double step", "ABFX", settings());
+    }
+
+    @Test
+    public void testFourPawls() {
+        setMachine(UPPER, 6, 4, rotors);
+        machine.insertRotors(new String[] {"B", "BETA", "I", "II", "III",
+                                           "IV"});
+        machine.setRotors("AADVJ");
+        machine.convert(0);
+        assertEquals("Wrong first step", "AAEWK", settings());
+        machine.convert(0);
+        assertEquals("Wrong second step", "ABFWL", settings());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMisnamedRotor() {
+        setMachine(UPPER, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "BETA", "III", "IV", "X"});
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testFixedRotorInPawlSlot() {
+        setMachine(UPPER, 5, 3, rotors);
+        machine.insertRotors(new String[] {"B", "III", "BETA", "IV", "I"});
+    }
+}
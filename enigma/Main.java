@@ -1,12 +1,37 @@
 package enigma;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Writer;
 
+import java.net.SocketAddress;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import java.lang.String;
 
@@ -25,7 +50,35 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  ARGS may begin with options of the form --NAME=VALUE:
+     *    --threads=N  converts independent settings blocks concurrently
+     *                 on N threads, each with its own machine.
+     *    --stream     reads, converts and writes in a single pass through
+     *                 fixed-size buffers, using channels for I/O.
+     *    --pipeline   as --stream, but reads, converts and writes on
+     *                 three threads connected by bounded queues of
+     *                 buffers, so that I/O overlaps with conversion.
+     *    --parallel   converts each message of at least
+     *                 Machine.PARALLEL_THRESHOLD characters in chunks on
+     *                 the common ForkJoinPool (see
+     *                 Machine.convertParallel).  Not allowed with the
+     *                 other modes, which run on threads of their own.
+     *    --cache=N    keeps the keystreams of the N most recently used
+     *                 settings lines, so that blocks repeating a settings
+     *                 line convert by table lookup (single thread only).
+     *    --server=A   serves sessions on A, a loopback TCP port or the
+     *                 path of a Unix domain socket, converting the input
+     *                 of each connection and sending back the output
+     *                 (see Server).  Only ARGS[0] may then be given.
+     *    --stats=N    prints a line of metrics (see Metrics) on the
+     *                 standard error every N seconds, and at the end.
+     *    --jmx        makes the metrics readable through JMX as
+     *                 enigma:type=Metrics.
+     *    --compile=F  writes the configuration to F as a binary snapshot
+     *                 and processes no messages.  ARGS[0] may name such a
+     *                 snapshot instead of a configuration file. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -38,11 +91,42 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int numOptions = 0;
+        while (numOptions < args.length && args[numOptions].startsWith("--")) {
+            setOption(args[numOptions]);
+            numOptions += 1;
+        }
+        args = Arrays.copyOfRange(args, numOptions, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        if (_parallel && (_threads > 1 || _stream || _pipeline
+                          || _serverAddress != null)) {
+            throw error("--parallel only applies to the default mode");
+        }
+
+        if (_serverAddress != null && args.length > 1) {
+            throw error("no input or output files allowed with --server");
+        }
+
+        if (ConfigSnapshot.isSnapshot(Paths.get(args[0]))) {
+            _snapshot = Paths.get(args[0]);
+        } else {
+            _config = getInput(args[0]);
+        }
+
+        if (_serverAddress != null) {
+            return;
+        }
+
+        if (_stream || _pipeline) {
+            _inputChannel = args.length > 1 ? getInputChannel(args[1])
+                : Channels.newChannel(System.in);
+            _outputChannel = args.length > 2 ? getOutputChannel(args[2])
+                : Channels.newChannel(System.out);
+            return;
+        }
 
         if (args.length > 1) {
             _input = getInput(args[1]);
@@ -57,6 +141,61 @@ public final class Main {
         }
     }
 
+    /** Set the option given by OPTION, a command-line argument of the form
+     *  --NAME=VALUE. */
+    private void setOption(String option) {
+        int eq = option.indexOf('=');
+        String name = eq < 0 ? option : option.substring(0, eq);
+        String value = eq < 0 ? "" : option.substring(eq + 1);
+        switch (name) {
+        case "--threads":
+            _threads = intOption(option, value);
+            break;
+        case "--stream":
+            _stream = true;
+            break;
+        case "--pipeline":
+            _pipeline = true;
+            break;
+        case "--parallel":
+            _parallel = true;
+            break;
+        case "--cache":
+            _cacheSize = intOption(option, value);
+            break;
+        case "--server":
+            _serverAddress = Server.address(value);
+            break;
+        case "--stats":
+            _statsPeriod = intOption(option, value);
+            break;
+        case "--jmx":
+            _jmx = true;
+            break;
+        case "--compile":
+            if (value.isEmpty()) {
+                throw error("bad value for option %s", option);
+            }
+            _compileTo = Paths.get(value);
+            break;
+        default:
+            throw error("unknown option: %s", option);
+        }
+    }
+
+    /** Return VALUE, the value of OPTION, as a positive integer. */
+    private int intOption(String option, String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad value for option %s", option);
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
@@ -75,41 +214,276 @@ public final class Main {
         }
     }
 
+    /** Return a channel reading from the file named NAME. */
+    private ReadableByteChannel getInputChannel(String name) {
+        try {
+            return FileChannel.open(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel writing to the file named NAME. */
+    private WritableByteChannel getOutputChannel(String name) {
+        try {
+            return FileChannel.open(Paths.get(name),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE,
+                                    StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output.  Metrics are published as the options
+     *  direct. */
     private void process() {
+        if (_jmx || _serverAddress != null) {
+            _metrics.register();
+        }
+        if (_statsPeriod > 0) {
+            _metrics.startReporting(_statsPeriod, System.err);
+        }
+        try {
+            processInput();
+        } finally {
+            _metrics.stopReporting();
+        }
+    }
+
+    /** Do the work of process. */
+    private void processInput() {
+        long start = System.nanoTime();
         Machine enigma = readConfig();
-        String next = _input.nextLine();
-        while (_input.hasNext()) {
-            String setting = next;
-            if (!setting.contains("*")) {
-                throw new EnigmaException("Wrong setting format");
+        _metrics.addTime(Metrics.Phase.CONFIG, System.nanoTime() - start);
+        if (_compileTo != null) {
+            ConfigSnapshot.write(enigma, _compileTo);
+            return;
+        }
+        if (_serverAddress != null) {
+            serve(enigma);
+            return;
+        }
+        if (_cacheSize > 0 && _threads == 1) {
+            _keystreams =
+                new KeystreamCache(_cacheSize, KEYSTREAM_LENGTH, (settings) -> {
+                    Machine M = enigma.copy();
+                    setUp(M, settings);
+                    return M;
+                });
+        }
+        if (_pipeline) {
+            new Pipeline(enigma, _keystreams, _metrics, _inputChannel,
+                         _outputChannel, Charset.defaultCharset()).run();
+            return;
+        }
+        if (_stream) {
+            processStream(enigma);
+            return;
+        }
+        if (_threads > 1) {
+            processConcurrently(enigma);
+            return;
+        }
+        for (List<String> block = nextBlock(); block != null;
+             block = nextBlock()) {
+            convertBlock(enigma, block, _output, _parallel);
+        }
+    }
+
+    /** Apply the machine configured as TEMPLATE to the messages in _input
+     *  as for process, but converting up to _threads settings blocks at a
+     *  time, each with a copy of TEMPLATE owned by its worker thread.  The
+     *  results are sent to _output in input order. */
+    private void processConcurrently(Machine template) {
+        ExecutorService workers = Executors.newFixedThreadPool(_threads);
+        ThreadLocal<Machine> machines =
+            ThreadLocal.withInitial(template::copy);
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<>();
+        try {
+            for (List<String> block = nextBlock(); block != null;
+                 block = nextBlock()) {
+                final List<String> lines = block;
+                pending.add(workers.submit(() -> {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    convertBlock(machines.get(), lines,
+                                 new PrintStream(bytes), false);
+                    return bytes.toByteArray();
+                }));
+                if (pending.size() >= MAX_PENDING_PER_THREAD * _threads) {
+                    _output.write(finish(pending.remove()));
+                }
             }
-            setUp(enigma, setting);
+            while (!pending.isEmpty()) {
+                _output.write(finish(pending.remove()));
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /** Apply ENIGMA to the messages read from _inputChannel as for process,
+     *  writing the results to _outputChannel.  Input is decoded into, and
+     *  output encoded from, buffers of fixed size. */
+    private void processStream(Machine enigma) {
+        Charset charset = Charset.defaultCharset();
+        CharsetDecoder decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        Writer writer = Channels.newWriter(_outputChannel,
+                                           charset.newEncoder(), BUFFER_SIZE);
+        StreamConverter converter =
+            new StreamConverter(enigma, _keystreams, writer, _metrics);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        try {
+            boolean atEnd = false;
+            while (!atEnd) {
+                atEnd = _inputChannel.read(bytes) < 0;
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, atEnd);
+                    if (atEnd && result.isUnderflow()) {
+                        result = decoder.flush(chars);
+                    }
+                    chars.flip();
+                    converter.process(chars);
+                    chars.clear();
+                } while (result.isOverflow());
+                bytes.compact();
+            }
+            converter.finish();
+            _inputChannel.close();
+            _outputChannel.close();
+        } catch (IOException excp) {
+            throw error("I/O error: %s", excp.getMessage());
+        }
+    }
+
+    /** Serve sessions converting with copies of TEMPLATE at
+     *  _serverAddress until the process is stopped. */
+    private void serve(Machine template) {
+        try (Server server = new Server(template, _serverAddress,
+                                        System.err, _metrics)) {
+            System.err.printf("listening on %s%n", server.address());
+            server.serve();
+        } catch (IOException excp) {
+            throw error("server failed: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the output of the block converted by TASK, waiting for it if
+     *  necessary. */
+    private byte[] finish(Future<byte[]> task) {
+        try {
+            return task.get();
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw error("conversion failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+    }
+
+    /** Return the next settings block of _input: its settings line
+     *  followed by its message lines (upper-cased, leading empty lines
+     *  omitted).  Returns null if there are no more blocks. */
+    private List<String> nextBlock() {
+        long start = System.nanoTime();
+        List<String> block = readBlock();
+        _metrics.addTime(Metrics.Phase.PARSE, System.nanoTime() - start);
+        return block;
+    }
+
+    /** Read and return the next settings block, as for nextBlock. */
+    private List<String> readBlock() {
+        if (_next == null) {
+            if (!_input.hasNextLine()) {
+                return null;
+            }
+            _next = _input.nextLine();
+        }
+        if (!_input.hasNext()) {
+            return null;
+        }
+        ArrayList<String> block = new ArrayList<>();
+        if (!_next.contains("*")) {
+            throw new EnigmaException("Wrong setting format");
+        }
+        block.add(_next);
+        String next = (_input.nextLine()).toUpperCase();
+        while (next.isEmpty()) {
             next = (_input.nextLine()).toUpperCase();
-            while (next.isEmpty()) {
+        }
+        while (!(next.contains("*"))) {
+            block.add(next);
+            if (!_input.hasNext()) {
+                next = "*";
+            } else {
                 next = (_input.nextLine()).toUpperCase();
             }
-            while (!(next.contains("*"))) {
-                String result = enigma.convert(next.replaceAll(" ", ""));
-                if (next.isEmpty()) {
-                    _output.println();
-                } else {
-                    printMessageLine(result);
-                }
-                if (!_input.hasNext()) {
-                    next = "*";
-                } else {
-                    next = (_input.nextLine()).toUpperCase();
-                }
+        }
+        _next = next;
+        return block;
+    }
+
+    /** Set up M with the settings line that starts BLOCK and convert the
+     *  message lines that follow it, printing the results on OUT.  Long
+     *  lines are converted by M.convertParallel iff PARALLEL. */
+    private void convertBlock(Machine M, List<String> block, PrintStream out,
+                              boolean parallel) {
+        long start = System.nanoTime(), steps = M.rotorSteps();
+        long chars = 0;
+        CharConverter converter;
+        if (_keystreams != null) {
+            converter = _keystreams.get(block.get(0)).cursor();
+        } else {
+            setUp(M, block.get(0));
+            converter = M;
+        }
+        long converting = System.nanoTime() - start;
+        for (int i = 1; i < block.size(); i += 1) {
+            String next = block.get(i);
+            char[] msg = next.replaceAll(" ", "").toCharArray();
+            long t0 = System.nanoTime();
+            if (parallel && converter == M) {
+                M.convertParallel(msg, 0, msg, 0, msg.length);
+            } else {
+                converter.convert(msg, 0, msg, 0, msg.length);
+            }
+            converting += System.nanoTime() - t0;
+            chars += msg.length;
+            String result = new String(msg);
+            if (next.isEmpty()) {
+                out.println();
+            } else {
+                printMessageLine(result, out);
             }
         }
+        out.flush();
+        long nanos = System.nanoTime() - start;
+        _metrics.recordBlock(chars,
+                             converter == M ? M.rotorSteps() - steps : chars,
+                             nanos);
+        _metrics.addTime(Metrics.Phase.CONVERT, converting);
+        _metrics.addTime(Metrics.Phase.OUTPUT, nanos - converting);
     }
 
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
     private Machine readConfig() {
+        if (_snapshot != null) {
+            Machine result = ConfigSnapshot.read(_snapshot);
+            _alphabet = result.alphabet();
+            return result;
+        }
         try {
             String alphabet = _config.next();
             if (alphabet.contains("(") || alphabet.contains(")") || alphabet.contains("*")) {
@@ -164,9 +538,9 @@ public final class Main {
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+    static void setUp(Machine M, String settings) {
         String[] set = settings.split(" ");
-        if (set.length - 1 < M.numRotors()) {
+        if (set.length < M.numRotors() + 2) {
             throw new EnigmaException("Not enough arguments in setting");
         }
 
@@ -184,7 +558,7 @@ public final class Main {
         }
 
         String steckered = "";
-        for (int i = 7; i < set.length; i++) {
+        for (int i = M.numRotors() + 2; i < set.length; i++) {
             steckered = steckered.concat(set[i] + " ");
         }
         M.insertRotors(rotors);
@@ -192,19 +566,19 @@ public final class Main {
             throw new EnigmaException("First Rotor should be a reflector");
         }
         M.setRotors(set[M.numRotors()+1]);
-        M.setPlugboard(new Permutation(steckered, _alphabet));
+        M.setPlugboard(new Permutation(steckered, M.alphabet()));
 
     }
 
-    /** Print MSG in groups of five (except that the last group may
+    /** Print MSG on OUT in groups of five (except that the last group may
      *  have fewer letters). */
-    private void printMessageLine(String msg) {
+    private void printMessageLine(String msg, PrintStream out) {
         for (int i = 0; i < msg.length(); i += 5) {
             int cap = msg.length() - i;
             if (cap <= 5) {
-                _output.println(msg.substring(i, i+cap));
+                out.println(msg.substring(i, i+cap));
             } else {
-                _output.print(msg.substring(i, i+5) + " ");
+                out.print(msg.substring(i, i+5) + " ");
             }
         }
     }
@@ -235,4 +609,64 @@ public final class Main {
 
     /** Type and notches of current rotor. */
     private String notches;
+
+    /** The line of _input read but not yet consumed by nextBlock, or null
+     *  if no line has been read. */
+    private String _next;
+
+    /** Number of threads converting settings blocks. */
+    private int _threads = 1;
+
+    /** Number of blocks per thread that may be converted ahead of the
+     *  output. */
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    /** True iff long messages are converted by
+     *  Machine.convertParallel. */
+    private boolean _parallel;
+
+    /** True iff input is converted by processStream. */
+    private boolean _stream;
+
+    /** True iff input is converted by a Pipeline. */
+    private boolean _pipeline;
+
+    /** Source of input messages for processStream or a Pipeline. */
+    private ReadableByteChannel _inputChannel;
+
+    /** Destination of processed messages for processStream or a
+     *  Pipeline. */
+    private WritableByteChannel _outputChannel;
+
+    /** The configuration snapshot named on the command line, or null if
+     *  the configuration is read from _config. */
+    private Path _snapshot;
+
+    /** Address at which to serve sessions, or null if not a server. */
+    private SocketAddress _serverAddress;
+
+    /** File to which to write the configuration as a snapshot, or null. */
+    private Path _compileTo;
+
+    /** Metrics of this run. */
+    private final Metrics _metrics = new Metrics();
+
+    /** Seconds between metrics lines on the standard error, or 0 for
+     *  none. */
+    private int _statsPeriod;
+
+    /** True iff the metrics are registered with JMX. */
+    private boolean _jmx;
+
+    /** Maximum number of keystreams cached, or 0 for no caching. */
+    private int _cacheSize;
+
+    /** Cache of keystreams by settings line, or null if not caching. */
+    private KeystreamCache _keystreams;
+
+    /** Number of positions tabulated in each cached keystream. */
+    private static final int KEYSTREAM_LENGTH = 1 << 12;
+
+    /** Size of the byte and character buffers used by processStream. */
+    private static final int BUFFER_SIZE = 1 << 16;
 }
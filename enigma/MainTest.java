@@ -0,0 +1,65 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for Main's handling of settings lines.
+ *  @author Jacky Tian
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a machine with NUMROTORS slots and PAWLS pawls, set up
+     *  from SETTINGS by Main.setUp. */
+    private Machine setUp(int numRotors, int pawls, String settings) {
+        return freshMachine(numRotors, pawls, settings);
+    }
+
+    /** Return a machine with NUMROTORS slots and PAWLS pawls holding
+     *  ROTORS at SETTING, with plugboard PLUGS, set up directly. */
+    private Machine expected(int numRotors, int pawls, String[] rotors,
+                             String setting, String plugs) {
+        Machine machine = freshMachine(numRotors, pawls, null);
+        machine.insertRotors(rotors);
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation(plugs, UPPER));
+        return machine;
+    }
+
+    @Test
+    public void fourSlotPlugs() {
+        Machine machine = setUp(4, 3, "* B I II III AXL (HQ) (EX) (IP)");
+        assertEquals('Q', machine.plugboard().permute('H'));
+        assertEquals('X', machine.plugboard().permute('E'));
+        assertEquals('P', machine.plugboard().permute('I'));
+        assertEquals(expected(4, 3, new String[] {"B", "I", "II", "III"},
+                              "AXL", "(HQ) (EX) (IP)")
+                     .convert("FROMHISSHOULDERHIAWATHA"),
+                     machine.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void sixSlotPlugs() {
+        Machine machine =
+            setUp(6, 4, "* B BETA I II III IV AXLEA (HQ) (EX)");
+        assertEquals('Q', machine.plugboard().permute('H'));
+        assertEquals('X', machine.plugboard().permute('E'));
+        assertEquals(expected(6, 4, new String[] {"B", "BETA", "I", "II",
+                                                  "III", "IV"},
+                              "AXLEA", "(HQ) (EX)")
+                     .convert("FROMHISSHOULDERHIAWATHA"),
+                     machine.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void missingSetting() {
+        setUp(5, 3, "* B BETA III IV I");
+    }
+}
@@ -0,0 +1,261 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Counters and timers describing the work done by a run of Main: the
+ *  characters converted and rotor steps taken, a histogram of the time to
+ *  convert each settings block, and the time spent in each phase (loading
+ *  the configuration, parsing input, converting, writing output).
+ *
+ *  Recording is cheap enough to leave on: callers accumulate in local
+ *  variables and record once per settings block, into striped counters
+ *  (LongAdder) and a fixed array of power-of-two latency buckets, so
+ *  threads do not contend.  The values can be read through JMX (see
+ *  register) or printed periodically (see startReporting).
+ *  @author Jacky Tian
+ */
+class Metrics implements MetricsMXBean {
+
+    /** The phases whose times are recorded. */
+    enum Phase {
+        /** Reading the configuration. */
+        CONFIG,
+        /** Reading and parsing input. */
+        PARSE,
+        /** Converting messages. */
+        CONVERT,
+        /** Formatting and writing output. */
+        OUTPUT
+    }
+
+    /** Metrics with all counts zero, started now. */
+    Metrics() {
+        _start = System.nanoTime();
+    }
+
+    /** Record a settings block of CHARS characters, converted with STEPS
+     *  rotor steps in NANOS nanoseconds. */
+    void recordBlock(long chars, long steps, long nanos) {
+        _chars.add(chars);
+        _steps.add(steps);
+        _blocks.increment();
+        _blockNanos.add(nanos);
+        _histogram.incrementAndGet(bucket(nanos));
+    }
+
+    /** Record NANOS nanoseconds spent in PHASE. */
+    void addTime(Phase phase, long nanos) {
+        _phaseNanos[phase.ordinal()].add(nanos);
+    }
+
+    /** Return the histogram bucket for a latency of NANOS nanoseconds:
+     *  the number of bits needed to represent it. */
+    static int bucket(long nanos) {
+        return 64 - Long.numberOfLeadingZeros(Math.max(nanos, 0));
+    }
+
+    /** Make me readable through the platform MBean server as
+     *  enigma:type=Metrics, replacing any metrics registered before. */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s", excp.getMessage());
+        }
+    }
+
+    /** Print a summary line on OUT every SECONDS seconds, until
+     *  stopReporting is called. */
+    synchronized void startReporting(int seconds, PrintStream out) {
+        if (_reporter != null) {
+            throw error("already reporting");
+        }
+        _reportTo = out;
+        _reporter = Executors.newSingleThreadScheduledExecutor((task) -> {
+            Thread thread = new Thread(task, "enigma-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        _reporter.scheduleAtFixedRate(this::report, seconds, seconds,
+                                      TimeUnit.SECONDS);
+    }
+
+    /** Stop periodic reporting, if it was started, printing a final
+     *  summary line. */
+    synchronized void stopReporting() {
+        if (_reporter != null) {
+            _reporter.shutdownNow();
+            _reporter = null;
+            report();
+        }
+    }
+
+    /** Print a summary line on _reportTo. */
+    private void report() {
+        _reportTo.println("enigma: " + getSummary());
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return _chars.sum();
+    }
+
+    @Override
+    public long getRotorSteps() {
+        return _steps.sum();
+    }
+
+    @Override
+    public long getBlocks() {
+        return _blocks.sum();
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        double seconds = (System.nanoTime() - _start) / 1e9;
+        return seconds <= 0 ? 0.0 : getCharactersConverted() / seconds;
+    }
+
+    @Override
+    public double getBlockLatencyMeanMicros() {
+        long blocks = getBlocks();
+        return blocks == 0 ? 0.0 : _blockNanos.sum() / 1e3 / blocks;
+    }
+
+    @Override
+    public double getBlockLatencyMedianMicros() {
+        return percentileMicros(0.5);
+    }
+
+    @Override
+    public double getBlockLatency99Micros() {
+        return percentileMicros(0.99);
+    }
+
+    @Override
+    public long[] getBlockLatencyHistogram() {
+        long[] result = new long[_histogram.length()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = _histogram.get(k);
+        }
+        return result;
+    }
+
+    @Override
+    public double getConfigLoadMillis() {
+        return millis(Phase.CONFIG);
+    }
+
+    @Override
+    public double getParseMillis() {
+        return millis(Phase.PARSE);
+    }
+
+    @Override
+    public double getConvertMillis() {
+        return millis(Phase.CONVERT);
+    }
+
+    @Override
+    public double getOutputMillis() {
+        return millis(Phase.OUTPUT);
+    }
+
+    @Override
+    public String getSummary() {
+        return String.format("%d chars (%.0f/s), %d rotor steps, %d blocks "
+                             + "(mean %.1f us, p50 <= %.0f us, "
+                             + "p99 <= %.0f us); config %.1f ms, "
+                             + "parse %.1f ms, convert %.1f ms, "
+                             + "output %.1f ms",
+                             getCharactersConverted(),
+                             getCharactersPerSecond(), getRotorSteps(),
+                             getBlocks(), getBlockLatencyMeanMicros(),
+                             getBlockLatencyMedianMicros(),
+                             getBlockLatency99Micros(), getConfigLoadMillis(),
+                             getParseMillis(), getConvertMillis(),
+                             getOutputMillis());
+    }
+
+    @Override
+    public String toString() {
+        return getSummary();
+    }
+
+    /** Return the total time recorded for PHASE, in milliseconds. */
+    private double millis(Phase phase) {
+        return _phaseNanos[phase.ordinal()].sum() / 1e6;
+    }
+
+    /** Return the upper bound of the histogram bucket holding the block
+     *  latency at FRACTION of the way through the recorded latencies, in
+     *  microseconds. */
+    private double percentileMicros(double fraction) {
+        long[] counts = getBlockLatencyHistogram();
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+        long rank = (long) Math.ceil(fraction * total);
+        long seen = 0;
+        for (int k = 0; k < counts.length; k += 1) {
+            seen += counts[k];
+            if (seen >= rank) {
+                return Math.pow(2, k) / 1e3;
+            }
+        }
+        return Math.pow(2, counts.length - 1) / 1e3;
+    }
+
+    /** Name under which I am registered with the MBean server. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Time at which I was created (System.nanoTime). */
+    private final long _start;
+
+    /** Characters converted. */
+    private final LongAdder _chars = new LongAdder();
+
+    /** Rotor steps taken. */
+    private final LongAdder _steps = new LongAdder();
+
+    /** Settings blocks converted. */
+    private final LongAdder _blocks = new LongAdder();
+
+    /** Total time converting settings blocks, in nanoseconds. */
+    private final LongAdder _blockNanos = new LongAdder();
+
+    /** Element K counts the blocks whose latency in nanoseconds needs K
+     *  bits. */
+    private final AtomicLongArray _histogram = new AtomicLongArray(65);
+
+    /** Time spent in each phase, in nanoseconds, indexed by ordinal. */
+    private final LongAdder[] _phaseNanos = {
+        new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()
+    };
+
+    /** Runs periodic reports, or null if not reporting. */
+    private ScheduledExecutorService _reporter;
+
+    /** Where periodic reports are printed. */
+    private PrintStream _reportTo;
+}
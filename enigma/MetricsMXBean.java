@@ -0,0 +1,57 @@
+package enigma;
+
+/** The management interface of Metrics, through which JMX clients (e.g.,
+ *  jconsole) read it.  Times are totals since the metrics were created.
+ *  @author Jacky Tian
+ */
+public interface MetricsMXBean {
+
+    /** Return the number of message characters converted. */
+    long getCharactersConverted();
+
+    /** Return the number of single-position rotor movements.  Each
+     *  character taken from a keystream cache counts as one. */
+    long getRotorSteps();
+
+    /** Return the number of settings blocks converted. */
+    long getBlocks();
+
+    /** Return the mean number of characters converted per second since
+     *  the metrics were created. */
+    double getCharactersPerSecond();
+
+    /** Return the mean time to convert a settings block, in
+     *  microseconds. */
+    double getBlockLatencyMeanMicros();
+
+    /** Return the median time to convert a settings block, in
+     *  microseconds (an upper bound, to within a factor of two). */
+    double getBlockLatencyMedianMicros();
+
+    /** Return the 99th percentile of the time to convert a settings
+     *  block, in microseconds (an upper bound, to within a factor of
+     *  two). */
+    double getBlockLatency99Micros();
+
+    /** Return the number of settings blocks whose conversion took between
+     *  2**(K-1) and 2**K nanoseconds, as element K. */
+    long[] getBlockLatencyHistogram();
+
+    /** Return the time spent loading the configuration, in
+     *  milliseconds. */
+    double getConfigLoadMillis();
+
+    /** Return the time spent reading and parsing input, in
+     *  milliseconds. */
+    double getParseMillis();
+
+    /** Return the time spent converting messages, in milliseconds. */
+    double getConvertMillis();
+
+    /** Return the time spent formatting and writing output, in
+     *  milliseconds. */
+    double getOutputMillis();
+
+    /** Return all of the above as one line of text. */
+    String getSummary();
+}
@@ -0,0 +1,114 @@
+package enigma;
+
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for Metrics.
+ *  @author Jacky Tian
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void buckets() {
+        assertEquals(0, Metrics.bucket(0));
+        assertEquals(1, Metrics.bucket(1));
+        assertEquals(10, Metrics.bucket(1000));
+        assertEquals(11, Metrics.bucket(1024));
+    }
+
+    @Test
+    public void blocks() {
+        Metrics metrics = new Metrics();
+        for (int k = 0; k < 99; k += 1) {
+            metrics.recordBlock(10, 12, 1000);
+        }
+        metrics.recordBlock(10, 12, 1_000_000);
+        assertEquals(1000, metrics.getCharactersConverted());
+        assertEquals(1200, metrics.getRotorSteps());
+        assertEquals(100, metrics.getBlocks());
+        assertEquals(99, metrics.getBlockLatencyHistogram()[10]);
+        assertEquals(1.024, metrics.getBlockLatencyMedianMicros(), 1e-9);
+        assertEquals(1.024, metrics.getBlockLatency99Micros(), 1e-9);
+        assertEquals((99 * 1000 + 1_000_000) / 1e5,
+                     metrics.getBlockLatencyMeanMicros(), 1e-9);
+        metrics.addTime(Metrics.Phase.CONFIG, 2_500_000);
+        assertEquals(2.5, metrics.getConfigLoadMillis(), 1e-9);
+        assertTrue(metrics.getSummary().startsWith("1000 chars"));
+    }
+
+    @Test
+    public void rotorSteps() {
+        Machine stepped = freshMachine(5, STANDARD_SETTINGS);
+        Machine skipped = freshMachine(5, STANDARD_SETTINGS);
+        long start = stepped.rotorSteps();
+        int n = 100000;
+        for (int k = 0; k < n; k += 1) {
+            stepped.advance();
+        }
+        skipped.skip(n);
+        assertTrue(stepped.rotorSteps() - start > n);
+        assertEquals(stepped.rotorSteps(), skipped.rotorSteps());
+    }
+
+    @Test
+    public void streamConverterRecordsBlocks() {
+        Metrics metrics = new Metrics();
+        StreamConverter converter =
+            new StreamConverter(freshMachine(5, STANDARD_SETTINGS), null,
+                                new StringWriter(), metrics);
+        converter.process(CharBuffer.wrap(
+            "* B BETA III IV I AXLE\nHELLO WORLD\n"
+            + "* B BETA III IV I AXLF\nABC\n"));
+        converter.finish();
+        assertEquals(2, metrics.getBlocks());
+        assertEquals(13, metrics.getCharactersConverted());
+        assertTrue(metrics.getRotorSteps() >= 13);
+        assertTrue(metrics.getParseMillis() > 0);
+        assertTrue(metrics.getConvertMillis() > 0);
+        assertTrue(metrics.getOutputMillis() > 0);
+    }
+
+    @Test
+    public void keystreamCharactersCountAsSteps() {
+        Metrics metrics = new Metrics();
+        Machine template = freshMachine(5, STANDARD_SETTINGS);
+        KeystreamCache keystreams =
+            new KeystreamCache(2, 100, (settings) -> {
+                Machine machine = template.copy();
+                Main.setUp(machine, settings);
+                return machine;
+            });
+        StreamConverter converter =
+            new StreamConverter(template, keystreams, new StringWriter(),
+                                metrics);
+        converter.process(CharBuffer.wrap(
+            "* B BETA III IV I AXLE\nHELLO WORLD\n"));
+        converter.finish();
+        assertEquals(10, metrics.getCharactersConverted());
+        assertEquals(10, metrics.getRotorSteps());
+    }
+
+    @Test
+    public void jmx() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.recordBlock(42, 50, 100);
+        metrics.register();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.OBJECT_NAME);
+        assertEquals(42L, server.getAttribute(name, "CharactersConverted"));
+        server.unregisterMBean(name);
+    }
+}
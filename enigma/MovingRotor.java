@@ -15,6 +15,28 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchMask = new long[(size() + 63) / 64];
+        for (int i = 0; i < notches.length(); i++) {
+            int posn = alphabet().toInt(notches.charAt(i));
+            _notchMask[posn >>> 6] |= 1L << posn;
+        }
+    }
+
+    /** A moving rotor like ORIGINAL, sharing its tables. */
+    MovingRotor(MovingRotor original) {
+        super(original);
+        _notches = original._notches;
+        _notchMask = original._notchMask;
+    }
+
+    @Override
+    Rotor copy() {
+        return new MovingRotor(this);
+    }
+
+    /** Return the characters at whose positions I have notches. */
+    String notches() {
+        return _notches;
     }
 
     @Override
@@ -24,12 +46,21 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
+        int posn = setting();
+        return (_notchMask[posn >>> 6] & (1L << posn)) != 0;
+    }
+
+    @Override
+    int stepsToNotch() {
+        int result = -1;
         for (int i = 0; i < _notches.length(); i++) {
-            if (alphabet().toInt(_notches.charAt(i)) == this.setting()) {
-                return true;
-            } 
+            int steps = mod(alphabet().toInt(_notches.charAt(i))
+                            - setting(), size());
+            if (result < 0 || steps < result) {
+                result = steps;
+            }
         }
-        return false;
+        return result;
     }
 
     @Override
@@ -38,6 +69,10 @@ class MovingRotor extends Rotor {
     }
 
     /** String containing notches of the Rotor. */
-    private String _notches;
+    private final String _notches;
+
+    /** Bit set of my notch positions: position P is a notch iff bit P % 64
+     *  of _notchMask[P / 64] is set. */
+    private final long[] _notchMask;
 
 }
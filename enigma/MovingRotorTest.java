@@ -71,4 +71,27 @@ public class MovingRotorTest {
         checkRotor("Rotor I set", UPPER_STRING, NAVALZ_MAP.get("I"));
     }
 
+    @Test
+    public void checkRotorWrapsSetting() {
+        setRotor("I", NAVALA, "");
+        rotor.set(-1);
+        assertEquals(25, rotor.setting());
+        checkRotor("Rotor I set to -1", UPPER_STRING, NAVALZ_MAP.get("I"));
+    }
+
+    @Test
+    public void checkUntabulatedRotor() {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i <= Rotor.MAX_TABLE_SIZE; i += 1) {
+            chars.append((char) ('\u0100' + i));
+        }
+        Alphabet big = new Alphabet(chars.toString());
+        rotor = new MovingRotor("BIG",
+                                new Permutation("(\u0100\u0101)", big), "");
+        rotor.set(1);
+        assertEquals(Rotor.MAX_TABLE_SIZE, rotor.convertForward(0));
+        assertEquals(0, rotor.convertBackward(Rotor.MAX_TABLE_SIZE));
+        assertEquals(2, rotor.convertForward(2));
+    }
+
 }
@@ -0,0 +1,328 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many independent messages at once, one per lane, where each
+ *  lane starts out as a copy of a given machine.  All lanes advance in
+ *  lockstep: at each step every lane steps its rotors and then one
+ *  character of every lane passes through the rotors, one rotor at a
+ *  time.  The lane states are kept as arrays indexed by lane, and every
+ *  rotor at every setting is a row of one shared table, so each rotor pass
+ *  is the same table lookup across all lanes.  The lanes' dependency
+ *  chains are thus interleaved rather than run one after another.
+ *
+ *  VectorMultiStream performs the rotor passes with vector gathers, one
+ *  lane per vector element.  It needs the incubating Vector API, so it is
+ *  compiled separately and create uses it only if it loads; otherwise the
+ *  passes are done by the scalar code here.
+ *  @author Jacky Tian
+ */
+class MultiStream {
+
+    /** A multi-stream converter with one lane for each of MACHINES, all of
+     *  which must have the same alphabet and numbers of rotors and pawls
+     *  and have their rotors inserted.  The machines are not changed. */
+    MultiStream(List<Machine> machines) {
+        if (machines.isEmpty()) {
+            throw error("no machines");
+        }
+        Machine first = machines.get(0);
+        _alphabet = first.alphabet();
+        _numRotors = first.numRotors();
+        _pawls = first.numPawls();
+        _lanes = machines.size();
+        int n = _alphabet.size();
+        if (n > MAX_ALPHABET) {
+            throw error("alphabet too large for multi-stream conversion");
+        }
+        IdentityHashMap<Permutation, Integer> ids = new IdentityHashMap<>();
+        _rotor = new int[_numRotors][_lanes];
+        _setting = new int[_numRotors][_lanes];
+        _base = new int[_numRotors][_lanes];
+        _plugs = new int[_lanes * n];
+        _plugBase = new int[_lanes];
+        for (int l = 0; l < _lanes; l += 1) {
+            Machine machine = machines.get(l);
+            if (!sameAlphabet(machine.alphabet())
+                || machine.numRotors() != _numRotors
+                || machine.numPawls() != _pawls) {
+                throw error("machines of different kinds");
+            }
+            for (int i = 0; i < _numRotors; i += 1) {
+                Rotor rotor = machine._rotors[i];
+                if (rotor == null) {
+                    throw error("rotors not inserted");
+                }
+                Integer id = ids.get(rotor.permutation());
+                if (id == null) {
+                    id = ids.size();
+                    ids.put(rotor.permutation(), id);
+                }
+                _rotor[i][l] = id;
+                _setting[i][l] = rotor.setting();
+            }
+            int[] plugboard = machine.plugboard().table();
+            System.arraycopy(plugboard, 0, _plugs, l * n, n);
+            _plugBase[l] = l * n;
+        }
+        _forward = new int[ids.size() * n * n];
+        _backward = new int[ids.size() * n * n];
+        _notch = new boolean[ids.size() * n];
+        boolean[] tabulated = new boolean[ids.size()];
+        for (int l = 0; l < _lanes; l += 1) {
+            for (int i = 0; i < _numRotors; i += 1) {
+                int id = _rotor[i][l];
+                if (!tabulated[id]) {
+                    tabulate(machines.get(l)._rotors[i], id);
+                    tabulated[id] = true;
+                }
+                _base[i][l] = (_rotor[i][l] * n + _setting[i][l]) * n;
+            }
+        }
+        _x = new int[_lanes];
+        _notched = new long[_lanes];
+    }
+
+    /** Return a multi-stream converter for MACHINES (see the
+     *  constructor), using vector instructions if they are available. */
+    static MultiStream create(List<Machine> machines) {
+        try {
+            return (MultiStream) Class.forName("enigma.VectorMultiStream")
+                .getDeclaredConstructor(List.class).newInstance(machines);
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return new MultiStream(machines);
+        }
+    }
+
+    /** Return true iff ALPHA has the same characters, in the same order,
+     *  as my alphabet. */
+    private boolean sameAlphabet(Alphabet alpha) {
+        if (alpha == _alphabet) {
+            return true;
+        }
+        if (alpha.size() != _alphabet.size()) {
+            return false;
+        }
+        for (int i = 0; i < alpha.size(); i += 1) {
+            if (alpha.toChar(i) != _alphabet.toChar(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Fill the rows of the shared tables for ROTOR, whose identifier is
+     *  ID. */
+    private void tabulate(Rotor rotor, int id) {
+        int n = _alphabet.size();
+        int start = id * n * n;
+        Permutation perm = rotor.permutation();
+        for (int s = 0; s < n; s += 1) {
+            for (int p = 0; p < n; p += 1) {
+                int row = start + s * n;
+                _forward[row + p] = perm.wrap(perm.permute(p + s) - s);
+                _backward[row + p] = perm.wrap(perm.invert(p + s) - s);
+            }
+        }
+        if (rotor instanceof MovingRotor) {
+            String notches = ((MovingRotor) rotor).notches();
+            for (int k = 0; k < notches.length(); k += 1) {
+                _notch[id * n + _alphabet.toInt(notches.charAt(k))] = true;
+            }
+        }
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return true iff rotor passes use vector instructions. */
+    boolean vectorized() {
+        return false;
+    }
+
+    /** Return the conversions of MESSAGES, where MESSAGES[L] is converted
+     *  on lane L, continuing from the lane's state after any previous
+     *  conversion. */
+    String[] convert(String[] messages) {
+        if (messages.length != _lanes) {
+            throw error("need one message per lane");
+        }
+        Integer[] byLength = new Integer[_lanes];
+        char[][] in = new char[_lanes][], out = new char[_lanes][];
+        int longest = 0;
+        for (int l = 0; l < _lanes; l += 1) {
+            byLength[l] = l;
+            in[l] = messages[l].toCharArray();
+            out[l] = new char[messages[l].length()];
+            longest = Math.max(longest, out[l].length);
+        }
+        Arrays.sort(byLength, (a, b) -> Integer.compare(out[a].length,
+                                                        out[b].length));
+        int[][] saved = new int[_lanes][];
+        int done = 0;
+        int[] x = _x;
+        for (int t = 0; t < longest; t += 1) {
+            for (; done < _lanes && out[byLength[done]].length == t;
+                 done += 1) {
+                saved[byLength[done]] = settings(byLength[done]);
+            }
+            advanceLanes();
+            for (int l = 0; l < _lanes; l += 1) {
+                x[l] = t < out[l].length ? _alphabet.toInt(in[l][t]) : 0;
+            }
+            mapLanes(x, _lanes);
+            for (int l = 0; l < _lanes; l += 1) {
+                if (t < out[l].length) {
+                    out[l][t] = _alphabet.toChar(x[l]);
+                }
+            }
+        }
+        for (int l = 0; l < _lanes; l += 1) {
+            if (saved[l] != null) {
+                restore(l, saved[l]);
+            }
+        }
+        String[] result = new String[_lanes];
+        for (int l = 0; l < _lanes; l += 1) {
+            result[l] = new String(out[l]);
+        }
+        return result;
+    }
+
+    /** Return the rotor settings of lane L. */
+    private int[] settings(int l) {
+        int[] result = new int[_numRotors];
+        for (int i = 0; i < _numRotors; i += 1) {
+            result[i] = _setting[i][l];
+        }
+        return result;
+    }
+
+    /** Set the rotor settings of lane L to SETTINGS. */
+    private void restore(int l, int[] settings) {
+        int n = _alphabet.size();
+        for (int i = 0; i < _numRotors; i += 1) {
+            _setting[i][l] = settings[i];
+            _base[i][l] = (_rotor[i][l] * n + settings[i]) * n;
+        }
+    }
+
+    /** Advance the rotors of every lane, as Machine.advance does: first
+     *  record which slots of each lane are at a notch, then move each
+     *  slot of each lane that is at a notch, or whose right neighbour is,
+     *  and the rightmost slot of every lane. */
+    private void advanceLanes() {
+        if (_pawls == 0) {
+            return;
+        }
+        int n = _alphabet.size(), last = _numRotors - 1;
+        long[] notched = _notched;
+        Arrays.fill(notched, 0);
+        for (int i = _numRotors - _pawls + 1; i <= last; i += 1) {
+            int[] rotor = _rotor[i], setting = _setting[i];
+            long bit = 1L << i;
+            for (int l = 0; l < _lanes; l += 1) {
+                if (_notch[rotor[l] * n + setting[l]]) {
+                    notched[l] |= bit;
+                }
+            }
+        }
+        for (int i = _numRotors - _pawls; i <= last; i += 1) {
+            int[] rotor = _rotor[i], setting = _setting[i], base = _base[i];
+            long bits = i == last ? -1L : 3L << i;
+            for (int l = 0; l < _lanes; l += 1) {
+                if ((notched[l] & bits) != 0 || i == last) {
+                    int posn = setting[l] + 1 == n ? 0 : setting[l] + 1;
+                    setting[l] = posn;
+                    base[l] = (rotor[l] * n + posn) * n;
+                }
+            }
+        }
+    }
+
+    /** Replace X[L] for each of the first COUNT lanes L by its conversion
+     *  on lane L at the current settings: through the plugboard, the
+     *  rotors from right to left and back, and the plugboard again. */
+    void mapLanes(int[] x, int count) {
+        mapLanes(x, 0, count);
+    }
+
+    /** Perform mapLanes on lanes FROM .. TO - 1 of X. */
+    final void mapLanes(int[] x, int from, int to) {
+        for (int l = from; l < to; l += 1) {
+            x[l] = _plugs[_plugBase[l] + x[l]];
+        }
+        for (int i = _numRotors - 1; i >= 0; i -= 1) {
+            int[] base = _base[i];
+            for (int l = from; l < to; l += 1) {
+                x[l] = _forward[base[l] + x[l]];
+            }
+        }
+        for (int i = 1; i < _numRotors; i += 1) {
+            int[] base = _base[i];
+            for (int l = from; l < to; l += 1) {
+                x[l] = _backward[base[l] + x[l]];
+            }
+        }
+        for (int l = from; l < to; l += 1) {
+            x[l] = _plugs[_plugBase[l] + x[l]];
+        }
+    }
+
+    /** Largest alphabet supported. */
+    static final int MAX_ALPHABET = 256;
+
+    /** Common alphabet of the lanes. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots. */
+    final int _numRotors;
+
+    /** Number of pawls. */
+    private final int _pawls;
+
+    /** Number of lanes. */
+    private final int _lanes;
+
+    /** Identifier of the rotor in slot I of lane L, at [I][L]. */
+    private final int[][] _rotor;
+
+    /** Setting of the rotor in slot I of lane L, at [I][L]. */
+    private final int[][] _setting;
+
+    /** Start in _forward and _backward of the row for the rotor in slot I
+     *  of lane L at its current setting, at [I][L]. */
+    final int[][] _base;
+
+    /** Forward conversions of every rotor at every setting: rotor R at
+     *  setting S converts P to _forward[(R * N + S) * N + P], where N is
+     *  the alphabet size. */
+    final int[] _forward;
+
+    /** Backward conversions, arranged as _forward. */
+    final int[] _backward;
+
+    /** Notch positions of every rotor: rotor R has a notch at setting S
+     *  iff _notch[R * N + S]. */
+    private final boolean[] _notch;
+
+    /** Plugboards of all lanes: lane L maps C to _plugs[_plugBase[L] +
+     *  C]. */
+    final int[] _plugs;
+
+    /** Start of each lane's plugboard in _plugs. */
+    final int[] _plugBase;
+
+    /** Characters being converted, one per lane. */
+    private final int[] _x;
+
+    /** Bit I of _notched[L] is set iff slot I of lane L is at a notch
+     *  (see advanceLanes). */
+    private final long[] _notched;
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MultiStream class.
+ *  @author Jacky Tian
+ */
+public class MultiStreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Settings lines for the test lanes. */
+    private static final String[] SETTINGS = {
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* B BETA I II III AAAA",
+        "* B BETA IV III II ZZDU (AZ) (BY)",
+        "* B BETA II IV I QEVJ",
+    };
+
+    /** Check that the lanes of STREAMS, created from copies of the
+     *  machines in MACHINES, convert MESSAGES (twice in succession) as the
+     *  machines do one at a time. */
+    private void checkLanes(ArrayList<Machine> machines, String[] messages,
+                            MultiStream streams) {
+        for (int round = 0; round < 2; round += 1) {
+            String[] result = streams.convert(messages);
+            for (int l = 0; l < messages.length; l += 1) {
+                assertEquals("lane " + l + " round " + round,
+                             machines.get(l).convert(messages[l]),
+                             result[l]);
+            }
+        }
+    }
+
+    @Test
+    public void matchesMachines() {
+        Random random = new Random(61);
+        int lanes = 37;
+        ArrayList<Machine> machines = new ArrayList<>();
+        ArrayList<Machine> copies = new ArrayList<>();
+        ArrayList<Machine> scalarCopies = new ArrayList<>();
+        String[] messages = new String[lanes];
+        for (int l = 0; l < lanes; l += 1) {
+            Machine machine = freshMachine(5, SETTINGS[l % SETTINGS.length]);
+            machine.skip(random.nextInt(1000));
+            machines.add(machine);
+            copies.add(machine.copy());
+            scalarCopies.add(machine.copy());
+            char[] msg = new char[random.nextInt(800)];
+            for (int i = 0; i < msg.length; i += 1) {
+                msg[i] = (char) ('A' + random.nextInt(26));
+            }
+            messages[l] = new String(msg);
+        }
+        MultiStream streams = MultiStream.create(machines);
+        MultiStream scalar = new MultiStream(machines);
+        checkLanes(copies, messages, streams);
+        checkLanes(scalarCopies, messages, scalar);
+    }
+
+    @Test
+    public void leavesMachinesAlone() {
+        Machine machine = freshMachine(5, SETTINGS[0]);
+        ArrayList<Machine> machines = new ArrayList<>();
+        machines.add(machine);
+        MultiStream.create(machines).convert(new String[] {"HELLOWORLD"});
+        assertEquals(freshMachine(5, SETTINGS[0]).convert("HELLOWORLD"),
+                     machine.convert("HELLOWORLD"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void rejectsMixedMachines() {
+        ArrayList<Machine> machines = new ArrayList<>();
+        machines.add(freshMachine(5, SETTINGS[0]));
+        Machine small = new Machine(UPPER, 4, 3, ALL_ROTORS);
+        small.insertRotors(new String[] {"B", "I", "II", "III"});
+        machines.add(small);
+        new MultiStream(machines);
+    }
+}
@@ -1,10 +1,21 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
-import java.lang.Object;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The cycle notation given to the
+ *  constructor is only used as input: it is compiled into dense forward
+ *  and inverse tables, so that permute and invert are single array loads.
+ *
+ *  Whole-permutation operations (composition, inverse, powers, shifts,
+ *  conjugation and cycle structure) work directly on such tables in time
+ *  proportional to the size of the alphabet.  Each is also available as a
+ *  static method on int[] tables.  Of these, compose, invert, shift,
+ *  conjugate and cycleType(int[], int[]) store their results in arrays
+ *  supplied by the caller and so may be used in loops that must not
+ *  allocate; power, cycles and cycleType(int[]) allocate working arrays.
  *  @author
  */
 class Permutation {
@@ -15,21 +26,68 @@ class Permutation {
      *  included in any cycle map to themselves. Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        String temp = cycles.trim();
-        temp = temp.replace("(", "");
-        temp = temp.replace(")", "");
-        _cycles = temp.split(" ");
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = _inverse[i] = i;
+        }
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char c = cycles.charAt(i);
+            if (c == '(') {
+                if (start >= 0) {
+                    throw error("nested cycle in %s", cycles);
+                }
+                start = i + 1;
+            } else if (c == ')') {
+                if (start < 0) {
+                    throw error("unbalanced parenthesis in %s", cycles);
+                }
+                addCycle(cycles.substring(start, i));
+                start = -1;
+            } else if (start < 0 && !Character.isWhitespace(c)) {
+                throw error("character outside of cycle in %s", cycles);
+            }
+        }
+        if (start >= 0) {
+            throw error("unterminated cycle in %s", cycles);
+        }
+    }
+
+    /** A permutation of the indices of ALPHABET that maps each index I to
+     *  FORWARD[I].  FORWARD must be a permutation of 0 .. ALPHABET.size()-1
+     *  and becomes the property of this Permutation. */
+    Permutation(int[] forward, Alphabet alphabet) {
+        if (forward.length != alphabet.size()) {
+            throw error("permutation table has wrong size");
+        }
+        _alphabet = alphabet;
+        _forward = forward;
+        _inverse = new int[forward.length];
+        Arrays.fill(_inverse, -1);
+        for (int i = 0; i < forward.length; i += 1) {
+            int to = forward[i];
+            if (to < 0 || to >= forward.length || _inverse[to] >= 0) {
+                throw error("permutation table is not a permutation");
+            }
+            _inverse[to] = i;
+        }
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
+     *  c0c1...cm.  Whitespace within CYCLE is ignored. */
     private void addCycle(String cycle) {
-        String[] newCycle = new String[_cycles.length+1];
-        for (int i = 0; i < _cycles.length; i++) {
-            newCycle[i] = _cycles[i];
+        String chars = cycle.replaceAll("\\s", "");
+        for (int i = 0; i < chars.length(); i += 1) {
+            int from = _alphabet.toInt(chars.charAt(i));
+            int to = _alphabet.toInt(chars.charAt((i + 1) % chars.length()));
+            if (_forward[from] != from || _inverse[to] != to) {
+                throw error("character '%c' appears in more than one cycle",
+                            chars.charAt(i));
+            }
+            _forward[from] = to;
+            _inverse[to] = from;
         }
-        newCycle[_cycles.length + 1] = cycle;
-        _cycles = newCycle;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -43,26 +101,16 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char c = _alphabet.toChar(wrap(p));
-        char newChar = '0';
-        for (int i = 0; i < _cycles.length; i++) {
-            for (int j = 0; j < _cycles[i].length(); j++) {
-                if (_cycles[i].charAt(j) == c) {
-                    newChar = _cycles[i].charAt((j+1) % _cycles[i].length());
-                    /**if (j+1 == _cycles[i].length() - 1) {
-                        newChar = _cycles[i].charAt(1);
-                    }*/
-                    return _alphabet.toInt(newChar);
-                }
-            }
+        if (p < 0 || p >= _forward.length) {
+            p = wrap(p);
         }
-        return p;
+        return _forward[p];
     }
 
     /** Return the value of P modulo the input SIZE. */
@@ -77,20 +125,10 @@ class Permutation {
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char n = _alphabet.toChar(wrap(c));
-        char newChar = '0';
-        for (int i = 0; i < _cycles.length; i++) {
-            for (int j = 0; j < _cycles[i].length(); j++) {
-                if (_cycles[i].charAt(j) == n) {
-                    newChar = _cycles[i].charAt(mod(j-1, _cycles[i].length()));
-                    /**if (j-1 == 0) {
-                        newChar = _cycles[i].charAt(_cycles[i].length() - 2);
-                    }*/
-                    return _alphabet.toInt(newChar);
-                }
-            }
+        if (c < 0 || c >= _inverse.length) {
+            c = wrap(c);
         }
-        return c;
+        return _inverse[c];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -114,21 +152,259 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (_forward[i] == i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the permutation that applies this permutation and then
+     *  OTHER, which must have the same size. */
+    Permutation compose(Permutation other) {
+        if (other.size() != size()) {
+            throw error("composing permutations of different sizes");
+        }
+        int[] result = new int[size()];
+        compose(_forward, other._forward, result);
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return the inverse of this permutation. */
+    Permutation inverse() {
+        return new Permutation(_inverse.clone(), _alphabet);
+    }
+
+    /** Return this permutation applied K times (its inverse applied -K
+     *  times if K is negative). */
+    Permutation power(long k) {
+        int[] result = new int[size()];
+        power(_forward, k, result);
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return this permutation as seen by a rotor at setting K: the
+     *  permutation that maps P to permute(P + K) - K, modulo the
+     *  alphabet size. */
+    Permutation shift(int k) {
+        int[] result = new int[size()];
+        shift(_forward, k, result);
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return the conjugate of this permutation by C, which must have the
+     *  same size: the permutation that maps C.permute(P) to
+     *  C.permute(permute(P)).  It has the same cycle structure as this
+     *  permutation, with each index P renamed C.permute(P). */
+    Permutation conjugate(Permutation c) {
+        if (c.size() != size()) {
+            throw error("conjugating permutations of different sizes");
+        }
+        int[] result = new int[size()];
+        conjugate(_forward, c._forward, result);
+        return new Permutation(result, _alphabet);
+    }
+
+    /** Return the cycles of this permutation, including cycles of length
+     *  1.  Each cycle starts with its smallest index, and the cycles are
+     *  in order of their first indices. */
+    int[][] cycles() {
+        return cycles(_forward);
+    }
+
+    /** Return the lengths of the cycles of this permutation, in
+     *  non-increasing order (its cycle type). */
+    int[] cycleType() {
+        return cycleType(_forward);
+    }
+
+    /** Return the order of this permutation: the least positive K such
+     *  that power(K) is the identity. */
+    long order() {
+        long result = 1;
+        for (int length : cycleType()) {
+            long a = result, b = length;
+            while (b != 0) {
+                long r = a % b;
+                a = b;
+                b = r;
+            }
+            result = result / a * length;
+        }
+        return result;
+    }
+
+    /** Return this permutation in cycle notation, omitting fixed
+     *  points, as accepted by the constructor. */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int[] cycle : cycles()) {
+            if (cycle.length > 1) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(');
+                for (int p : cycle) {
+                    result.append(_alphabet.toChar(p));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Store in RESULT the permutation table that applies permutation
+     *  table FIRST and then SECOND.  All three must have the same length;
+     *  RESULT may be FIRST, but not SECOND. */
+    static void compose(int[] first, int[] second, int[] result) {
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = second[first[i]];
+        }
+    }
+
+    /** Store in RESULT, which is not TABLE, the inverse of permutation
+     *  table TABLE. */
+    static void invert(int[] table, int[] result) {
+        for (int i = 0; i < table.length; i += 1) {
+            result[table[i]] = i;
+        }
+    }
+
+    /** Store in RESULT, which is not TABLE, the permutation table TABLE
+     *  applied K times.  Each cycle is rotated by K modulo its length, so
+     *  the time does not depend on K. */
+    static void power(int[] table, long k, int[] result) {
+        int n = table.length;
+        boolean[] seen = new boolean[n];
+        int[] cycle = new int[n];
+        for (int start = 0; start < n; start += 1) {
+            if (seen[start]) {
+                continue;
+            }
+            int length = 0;
+            for (int p = start; !seen[p]; p = table[p]) {
+                seen[p] = true;
+                cycle[length] = p;
+                length += 1;
+            }
+            int step = (int) Math.floorMod(k, (long) length);
+            for (int j = 0, to = step; j < length; j += 1) {
+                result[cycle[j]] = cycle[to];
+                to = to + 1 == length ? 0 : to + 1;
+            }
+        }
+    }
+
+    /** Store in RESULT, which is not TABLE, the permutation table that
+     *  maps P to TABLE[P + K] - K, modulo the length of TABLE: TABLE as
+     *  performed by a rotor at setting K. */
+    static void shift(int[] table, int k, int[] result) {
+        int n = table.length;
+        int s = Math.floorMod(k, n);
+        for (int p = 0, q = s; p < n; p += 1) {
+            int r = table[q] - s;
+            result[p] = r < 0 ? r + n : r;
+            q = q + 1 == n ? 0 : q + 1;
+        }
+    }
+
+    /** Store in RESULT, which is neither TABLE nor C, the permutation
+     *  table that maps C[P] to C[TABLE[P]]. */
+    static void conjugate(int[] table, int[] c, int[] result) {
+        for (int p = 0; p < table.length; p += 1) {
+            result[c[p]] = c[table[p]];
+        }
+    }
+
+    /** Return the cycles of permutation table TABLE, as for cycles(). */
+    static int[][] cycles(int[] table) {
+        int n = table.length;
+        boolean[] seen = new boolean[n];
+        int[] lengths = new int[n];
         int count = 0;
-        for (int i = 0; i < _cycles.length; i++) {
-            count += _cycles[i].length();
+        for (int start = 0; start < n; start += 1) {
+            if (!seen[start]) {
+                for (int p = start; !seen[p]; p = table[p]) {
+                    seen[p] = true;
+                    lengths[count] += 1;
+                }
+                count += 1;
+            }
+        }
+        int[][] result = new int[count][];
+        Arrays.fill(seen, false);
+        for (int start = 0, k = 0; start < n; start += 1) {
+            if (!seen[start]) {
+                int[] cycle = result[k] = new int[lengths[k]];
+                for (int j = 0, p = start; j < cycle.length; j += 1) {
+                    seen[p] = true;
+                    cycle[j] = p;
+                    p = table[p];
+                }
+                k += 1;
+            }
         }
-        if (count == _alphabet.size()) {
-            return true;
-        } else {
-            return false;
-        } // FIXME
+        return result;
+    }
+
+    /** Return the cycle type of permutation table TABLE, as for
+     *  cycleType(). */
+    static int[] cycleType(int[] table) {
+        int[] lengths = new int[table.length];
+        int count = cycleType(table, lengths);
+        int[] result = new int[count];
+        for (int k = 0; k < count; k += 1) {
+            result[k] = lengths[count - 1 - k];
+        }
+        return result;
+    }
+
+    /** Store the lengths of the cycles of permutation table TABLE in
+     *  non-decreasing order at the start of LENGTHS, which must be at least
+     *  as long as TABLE and is used as scratch space, and return their
+     *  number.  Does not allocate. */
+    static int cycleType(int[] table, int[] lengths) {
+        int n = table.length;
+        Arrays.fill(lengths, 0, n, 0);
+        int count = 0;
+        for (int start = 0; start < n; start += 1) {
+            if (lengths[start] >= 0) {
+                int length = 0;
+                for (int p = start; lengths[p] >= 0; p = table[p]) {
+                    lengths[p] |= SEEN;
+                    length += 1;
+                }
+                lengths[count] |= length;
+                count += 1;
+            }
+        }
+        for (int k = 0; k < n; k += 1) {
+            lengths[k] &= ~SEEN;
+        }
+        Arrays.sort(lengths, 0, count);
+        return count;
+    }
+
+    /** Flag marking the elements of a cycle already walked, in the
+     *  scratch array of cycleType.  (The K-th cycle found starts at an
+     *  index of at least K, so its length can share element K with that
+     *  index's flag.) */
+    private static final int SEEN = Integer.MIN_VALUE;
+
+    /** Return the table of this permutation: element I is permute(I).  The
+     *  table is shared, and must not be modified. */
+    int[] table() {
+        return _forward;
     }
 
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** An array of strings, each string representing a cycle that a letter would be converted through. */
-    private String[] _cycles;
-}
+    /** The image of each index under this permutation. */
+    private final int[] _forward;
 
+    /** The image of each index under the inverse of this permutation. */
+    private final int[] _inverse;
+}
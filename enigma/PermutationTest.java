@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.Arrays;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -43,6 +44,15 @@ public class PermutationTest {
         }
     }
 
+    /** Return the images of the characters of alpha under P, in order. */
+    private String permuted(Permutation p) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < alpha.length(); i += 1) {
+            result.append(p.permute(alpha.charAt(i)));
+        }
+        return result.toString();
+    }
+
     /* ***** TESTS ***** */
 
     @Test
@@ -51,4 +61,117 @@ public class PermutationTest {
         checkPerm("identity", UPPER_STRING, UPPER_STRING);
     }
 
+    @Test
+    public void checkNavalA() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        checkPerm("naval I", UPPER_STRING, NAVALA_MAP.get("I"));
+        perm = new Permutation(NAVALA.get("V"), UPPER);
+        checkPerm("naval V", UPPER_STRING, NAVALA_MAP.get("V"));
+    }
+
+    @Test
+    public void checkWrap() {
+        perm = new Permutation("(ABC)", UPPER);
+        assertEquals(1, perm.permute(26));
+        assertEquals(2, perm.permute(-25));
+        assertEquals(2, perm.invert(-26));
+    }
+
+    @Test
+    public void checkDerangement() {
+        assertTrue(new Permutation(NAVALA.get("B"), UPPER).derangement());
+        assertFalse(new Permutation(NAVALA.get("I"), UPPER).derangement());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkRepeatedCharacter() {
+        perm = new Permutation("(AB) (BC)", UPPER);
+    }
+
+    @Test
+    public void checkComposeAndInverse() {
+        Permutation p = new Permutation("(ABC)", UPPER);
+        Permutation q = new Permutation("(AB)", UPPER);
+        perm = p.compose(q);
+        checkPerm("(ABC) then (AB)", UPPER_STRING,
+                  "ACB" + UPPER_STRING.substring(3));
+        perm = p.inverse();
+        checkPerm("inverse of (ABC)", UPPER_STRING,
+                  "CAB" + UPPER_STRING.substring(3));
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        perm = perm.compose(perm.inverse());
+        checkPerm("I then its inverse", UPPER_STRING, UPPER_STRING);
+    }
+
+    @Test
+    public void checkPower() {
+        Permutation p = new Permutation(NAVALA.get("I"), UPPER);
+        Permutation expected = new Permutation("", UPPER);
+        for (int k = 0; k < 30; k += 1) {
+            perm = p.power(k);
+            checkPerm("I to the power " + k, UPPER_STRING,
+                      permuted(expected));
+            expected = expected.compose(p);
+        }
+        perm = p.power(-1);
+        checkPerm("I to the power -1", UPPER_STRING,
+                  permuted(p.inverse()));
+        assertEquals(60, p.order());
+        perm = p.power(60L * 1_000_000_007L + 3);
+        checkPerm("I to a large power", UPPER_STRING, permuted(p.power(3)));
+    }
+
+    @Test
+    public void checkShiftMatchesRotor() {
+        Permutation p = new Permutation(NAVALA.get("III"), UPPER);
+        Rotor rotor = new Rotor("III", p);
+        for (int k = -3; k < 30; k += 1) {
+            rotor.set(Math.floorMod(k, 26));
+            perm = p.shift(k);
+            for (int c = 0; c < 26; c += 1) {
+                assertEquals(rotor.convertForward(c), perm.permute(c));
+            }
+        }
+    }
+
+    @Test
+    public void checkConjugate() {
+        Permutation p = new Permutation("(ABC) (DE)", UPPER);
+        Permutation c = new Permutation("(AD) (BZ)", UPPER);
+        perm = p.conjugate(c);
+        assertEquals("(AE) (CDZ)", perm.toString());
+        assertArrayEquals(p.cycleType(), perm.cycleType());
+        Permutation q = new Permutation(NAVALA.get("IV"), UPPER);
+        assertEquals(c.inverse().compose(q).compose(c).toString(),
+                     q.conjugate(c).toString());
+    }
+
+    @Test
+    public void checkCycles() {
+        perm = new Permutation(NAVALA.get("I"), UPPER);
+        assertEquals("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)",
+                     perm.toString());
+        assertArrayEquals(new int[] {10, 4, 4, 3, 2, 2, 1},
+                          perm.cycleType());
+        int[][] cycles = perm.cycles();
+        assertEquals(7, cycles.length);
+        assertArrayEquals(new int[] {UPPER.toInt('S')}, cycles[6]);
+        int[] scratch = new int[26];
+        assertEquals(7, Permutation.cycleType(perm.table(), scratch));
+        assertArrayEquals(new int[] {1, 2, 2, 3, 4, 4, 10},
+                          Arrays.copyOf(scratch, 7));
+        int[] shift = new int[500];
+        for (int i = 0; i < shift.length; i += 1) {
+            shift[i] = (i + 1) % shift.length;
+        }
+        assertArrayEquals(new int[] {500}, Permutation.cycleType(shift));
+        assertEquals("", new Permutation("", UPPER).toString());
+        assertEquals(26, new Permutation("", UPPER).cycleType().length);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void checkBadTable() {
+        new Permutation(new int[] {0, 0, 1}, new Alphabet("ABC"));
+    }
+
 }
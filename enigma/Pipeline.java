@@ -0,0 +1,264 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import static enigma.EnigmaException.*;
+
+/** Converts input in the format of Main's input as a three-stage
+ *  pipeline.  A reader thread reads and decodes the input, the calling
+ *  thread converts it with a StreamConverter, and a writer thread encodes
+ *  and writes the output, so that reading and writing overlap with
+ *  conversion.  The stages pass chunks of characters through two
+ *  ChunkRings, which bound the memory used and make a stage that gets
+ *  ahead wait for the next one.
+ *  @author Jacky Tian
+ */
+class Pipeline {
+
+    /** A pipeline converting the text read from INPUT with MACHINE (or
+     *  with the keystreams of KEYSTREAMS if it is not null) and writing the
+     *  results to OUTPUT, both encoded in CHARSET, and recording settings
+     *  blocks in METRICS if it is not null. */
+    Pipeline(Machine machine, KeystreamCache keystreams, Metrics metrics,
+             ReadableByteChannel input, WritableByteChannel output,
+             Charset charset) {
+        this(machine, keystreams, metrics, input, output, charset,
+             NUM_CHUNKS, CHUNK_SIZE);
+    }
+
+    /** A pipeline as above whose rings have NUMCHUNKS chunks of CHUNKSIZE
+     *  characters each. */
+    Pipeline(Machine machine, KeystreamCache keystreams, Metrics metrics,
+             ReadableByteChannel input, WritableByteChannel output,
+             Charset charset, int numChunks, int chunkSize) {
+        _machine = machine;
+        _keystreams = keystreams;
+        _metrics = metrics;
+        _input = input;
+        _output = output;
+        _charset = charset;
+        _decoded = new ChunkRing(numChunks, chunkSize);
+        _converted = new ChunkRing(numChunks, chunkSize);
+    }
+
+    /** Convert all of the input, closing both channels.  Throws the first
+     *  error met by any stage, once the writer has stopped.  (After an
+     *  error, the reader may still be blocked in a read; it is interrupted
+     *  rather than awaited.) */
+    void run() {
+        Thread reader = new Thread(this::read, "enigma-reader");
+        Thread writer = new Thread(this::write, "enigma-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+        try {
+            convert();
+        } catch (RuntimeException excp) {
+            fail(excp);
+        }
+        try {
+            writer.join();
+            if (_failure == null) {
+                reader.join();
+            } else {
+                reader.interrupt();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            fail(error("interrupted"));
+        }
+        Throwable failure = _failure;
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure != null) {
+            throw error("I/O error: %s", failure.getMessage());
+        }
+    }
+
+    /** The reader stage: decode the input into chunks of _decoded. */
+    private void read() {
+        CharsetDecoder decoder = _charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (ReadableByteChannel input = _input) {
+            CharBuffer chars = CharBuffer.wrap(_decoded.claim());
+            boolean atEnd = false;
+            while (!atEnd) {
+                atEnd = input.read(bytes) < 0;
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, atEnd);
+                    if (atEnd && result.isUnderflow()) {
+                        result = decoder.flush(chars);
+                    }
+                    if (chars.position() > 0) {
+                        _decoded.publish(chars.position());
+                        chars = CharBuffer.wrap(_decoded.claim());
+                    }
+                } while (result.isOverflow());
+                bytes.compact();
+            }
+            _decoded.close();
+        } catch (IOException | RuntimeException excp) {
+            fail(excp);
+        }
+    }
+
+    /** The converter stage: convert the chunks of _decoded into chunks of
+     *  _converted. */
+    private void convert() {
+        StreamConverter converter =
+            new StreamConverter(_machine, _keystreams, new RingWriter(),
+                                _metrics);
+        for (char[] chunk = _decoded.take(); chunk != null;
+             chunk = _decoded.take()) {
+            converter.process(CharBuffer.wrap(chunk, 0, _decoded.length()));
+            _decoded.release();
+        }
+        converter.finish();
+        _converted.close();
+    }
+
+    /** The writer stage: encode the chunks of _converted and write them to
+     *  the output. */
+    private void write() {
+        CharsetEncoder encoder = _charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (WritableByteChannel output = _output) {
+            for (char[] chunk = _converted.take(); chunk != null;
+                 chunk = _converted.take()) {
+                CharBuffer chars = CharBuffer.wrap(chunk, 0,
+                                                   _converted.length());
+                while (encoder.encode(chars, bytes, false).isOverflow()) {
+                    drain(bytes, output);
+                }
+                _converted.release();
+            }
+            CharBuffer empty = CharBuffer.allocate(0);
+            while (encoder.encode(empty, bytes, true).isOverflow()) {
+                drain(bytes, output);
+            }
+            while (encoder.flush(bytes).isOverflow()) {
+                drain(bytes, output);
+            }
+            drain(bytes, output);
+        } catch (IOException | RuntimeException excp) {
+            fail(excp);
+        }
+    }
+
+    /** Write the contents of BYTES to OUTPUT and clear it. */
+    private static void drain(ByteBuffer bytes, WritableByteChannel output)
+        throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            output.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    /** Record FAILURE, unless an earlier failure has been recorded, and
+     *  stop all stages. */
+    private void fail(Throwable failure) {
+        synchronized (this) {
+            if (_failure == null) {
+                _failure = failure;
+            }
+        }
+        _decoded.abort(failure);
+        _converted.abort(failure);
+    }
+
+    /** A Writer that fills chunks of _converted, publishing each when it
+     *  is full or flushed. */
+    private class RingWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            while (len > 0) {
+                if (_chunk == null) {
+                    _chunk = _converted.claim();
+                    _length = 0;
+                }
+                int n = Math.min(len, _chunk.length - _length);
+                System.arraycopy(cbuf, off, _chunk, _length, n);
+                _length += n;
+                off += n;
+                len -= n;
+                if (_length == _chunk.length) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() {
+            if (_chunk != null && _length > 0) {
+                _converted.publish(_length);
+                _chunk = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+        }
+
+        /** The chunk being filled, or null if none is claimed. */
+        private char[] _chunk;
+
+        /** Number of characters in _chunk. */
+        private int _length;
+    }
+
+    /** Default number of chunks in each ring. */
+    static final int NUM_CHUNKS = 8;
+
+    /** Default number of characters in each chunk. */
+    static final int CHUNK_SIZE = 1 << 14;
+
+    /** Size of the byte buffers used for reading and writing. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Source of keystreams for settings lines, or null. */
+    private final KeystreamCache _keystreams;
+
+    /** Where settings blocks are recorded, or null. */
+    private final Metrics _metrics;
+
+    /** Source of input. */
+    private final ReadableByteChannel _input;
+
+    /** Destination of output. */
+    private final WritableByteChannel _output;
+
+    /** Encoding of input and output. */
+    private final Charset _charset;
+
+    /** Chunks passed from the reader to the converter. */
+    private final ChunkRing _decoded;
+
+    /** Chunks passed from the converter to the writer. */
+    private final ChunkRing _converted;
+
+    /** The first failure of any stage, or null. */
+    private volatile Throwable _failure;
+}
@@ -0,0 +1,146 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for ChunkRing and Pipeline.
+ *  @author Jacky Tian
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return an input in Main's format with several settings blocks. */
+    private String input() {
+        StringBuilder text = new StringBuilder();
+        String[] settings = {
+            "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR)",
+            "* B BETA I II IV ZZZZ (AB)",
+        };
+        for (int b = 0; b < 6; b += 1) {
+            text.append(settings[b % 2]).append("\n\n");
+            for (int i = 0; i < 40; i += 1) {
+                text.append("from his shoulder hiawatha ").append(i)
+                    .append("\n");
+                if (i % 7 == 0) {
+                    text.append("\n");
+                }
+            }
+        }
+        return text.toString().replaceAll("[0-9]", "");
+    }
+
+    /** Return the result of converting TEXT with a pipeline whose rings
+     *  have NUMCHUNKS chunks of CHUNKSIZE characters. */
+    private String pipeline(String text, int numChunks, int chunkSize) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new Pipeline(freshMachine(5, null), null, null,
+                     Channels.newChannel(new ByteArrayInputStream(
+                         text.getBytes(StandardCharsets.UTF_8))),
+                     Channels.newChannel(bytes), StandardCharsets.UTF_8,
+                     numChunks, chunkSize).run();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void ringPassesChunksInOrder() throws Exception {
+        ChunkRing ring = new ChunkRing(3, 4);
+        assertEquals(4, ring.chunkSize());
+        int count = 20000;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i += 1) {
+                char[] chunk = ring.claim();
+                chunk[0] = (char) i;
+                ring.publish(1 + i % 4);
+            }
+            ring.close();
+        });
+        producer.start();
+        int received = 0;
+        for (char[] chunk = ring.take(); chunk != null; chunk = ring.take()) {
+            assertEquals((char) received, chunk[0]);
+            assertEquals(1 + received % 4, ring.length());
+            ring.release();
+            received += 1;
+        }
+        producer.join();
+        assertEquals(count, received);
+    }
+
+    @Test
+    public void ringAbortWakesWaiters() throws Exception {
+        ChunkRing ring = new ChunkRing(1, 1);
+        Thread consumer = new Thread(() -> {
+            try {
+                ring.take();
+                fail("take returned");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        });
+        consumer.start();
+        ring.abort(new IOException("gone"));
+        consumer.join();
+        try {
+            ring.claim();
+            fail("claim succeeded");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("gone"));
+        }
+    }
+
+    @Test
+    public void matchesStreamConverter() {
+        String text = input();
+        StringWriter expected = new StringWriter();
+        StreamConverter converter =
+            new StreamConverter(freshMachine(5, null), expected);
+        converter.process(CharBuffer.wrap(text));
+        converter.finish();
+        assertEquals(expected.toString(), pipeline(text, 2, 16));
+        assertEquals(expected.toString(), pipeline(text, 1, 1));
+        assertEquals(expected.toString(),
+                     pipeline(text, Pipeline.NUM_CHUNKS,
+                              Pipeline.CHUNK_SIZE));
+    }
+
+    @Test
+    public void reportsErrors() {
+        try {
+            pipeline("NO SETTINGS HERE\n" + input(), 2, 8);
+            fail("missing settings line accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("Wrong setting format", excp.getMessage());
+        }
+        OutputStream broken = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        try {
+            new Pipeline(freshMachine(5, null), null, null,
+                         Channels.newChannel(new ByteArrayInputStream(
+                             input().getBytes(StandardCharsets.UTF_8))),
+                         Channels.newChannel(broken),
+                         StandardCharsets.UTF_8, 2, 8).run();
+            fail("write error ignored");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("disk full"));
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack on the plugboard.  For a given rotor order and
+ *  initial setting, the permutations the rotors perform at each position
+ *  of the ciphertext are tabulated once.  Candidate plugboards are then
+ *  represented as tables (involutions) that are changed in place one pair
+ *  at a time, and each candidate decryption is scored by its index of
+ *  coincidence, which is much higher for natural language than for random
+ *  text.  The search is a hill-climb: it keeps any change of a pair that
+ *  raises the score, until no change does.  Independent restarts from
+ *  random plugboards run in parallel and the best result is kept.
+ *  @author Jacky Tian
+ */
+class PlugboardSolver {
+
+    /** A solver for CIPHERTEXT enciphered on machines like MACHINE (whose
+     *  rotors and plugboard are ignored), with plugboards of at most
+     *  MAXPAIRS pairs. */
+    PlugboardSolver(Machine machine, String ciphertext, int maxPairs) {
+        _template = machine;
+        _alphabet = machine.alphabet();
+        _maxPairs = Math.min(maxPairs, _alphabet.size() / 2);
+        _cipher = new int[ciphertext.length()];
+        for (int i = 0; i < _cipher.length; i += 1) {
+            char c = ciphertext.charAt(i);
+            if (!_alphabet.contains(c)) {
+                throw error("character not in alphabet: %c", c);
+            }
+            _cipher[i] = _alphabet.toInt(c);
+        }
+        if (_cipher.length < 2) {
+            throw error("ciphertext too short");
+        }
+    }
+
+    /** Return the index of coincidence of text with COUNTS[C] occurrences
+     *  of character C: the probability that two characters drawn from
+     *  different positions are equal. */
+    static double indexOfCoincidence(int[] counts) {
+        long total = 0, pairs = 0;
+        for (int count : counts) {
+            total += count;
+            pairs += (long) count * (count - 1);
+        }
+        return total < 2 ? 0.0 : (double) pairs / (total * (total - 1));
+    }
+
+    /** Return the best plugboard found by RESTARTS hill-climbs for the
+     *  rotors named ROTORS (reflector first) at initial SETTING, using
+     *  the common pool. */
+    Solution solve(String[] rotors, String setting, int restarts) {
+        return solve(rotors, setting, restarts, ForkJoinPool.commonPool());
+    }
+
+    /** Return the best plugboard found by RESTARTS hill-climbs for the
+     *  rotors named ROTORS (reflector first) at initial SETTING, running
+     *  the climbs concurrently in POOL. */
+    Solution solve(String[] rotors, String setting, int restarts,
+                   ForkJoinPool pool) {
+        if (restarts <= 0) {
+            throw error("need at least one restart");
+        }
+        int[] tables = tabulate(rotors, setting);
+        ArrayList<Callable<Climb>> climbs = new ArrayList<>();
+        for (int r = 0; r < restarts; r += 1) {
+            climbs.add(new Climb(tables, r));
+        }
+        Climb best = null;
+        try {
+            for (Future<Climb> result : pool.invokeAll(climbs)) {
+                Climb climb = result.get();
+                if (best == null || climb._score > best._score) {
+                    best = climb;
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("solver interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw new IllegalStateException(excp.getCause());
+        }
+        return best.solution(rotors, setting);
+    }
+
+    /** Return the permutations performed by the rotors named ROTORS at
+     *  initial SETTING at each position of the ciphertext, as for
+     *  Machine.tabulate. */
+    private int[] tabulate(String[] rotors, String setting) {
+        Machine machine = _template.copy();
+        machine.setPlugboard(new Permutation("", _alphabet));
+        machine.insertRotors(rotors);
+        machine.setRotors(setting);
+        int[] tables = new int[_cipher.length * _alphabet.size()];
+        machine.tabulate(_cipher.length, tables, 0);
+        return tables;
+    }
+
+    /** The result of a search: rotors, setting, the plugboard found, its
+     *  score and the resulting decryption. */
+    static class Solution {
+
+        /** A solution for ROTORS at SETTING with plugboard PLUGBOARD,
+         *  giving PLAINTEXT with index of coincidence SCORE. */
+        Solution(String[] rotors, String setting, Permutation plugboard,
+                 String plugboardCycles, double score, String plaintext) {
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+            _plugboardCycles = plugboardCycles;
+            _score = score;
+            _plaintext = plaintext;
+        }
+
+        /** Return the plugboard found. */
+        Permutation plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the index of coincidence of plaintext(). */
+        double score() {
+            return _score;
+        }
+
+        /** Return the decryption of the ciphertext with plugboard(). */
+        String plaintext() {
+            return _plaintext;
+        }
+
+        /** Return me as a settings line. */
+        @Override
+        public String toString() {
+            String line = "* " + String.join(" ", _rotors) + " " + _setting;
+            return _plugboardCycles.isEmpty() ? line
+                : line + " " + _plugboardCycles;
+        }
+
+        /** Names of the rotors, reflector first. */
+        private final String[] _rotors;
+
+        /** Initial setting. */
+        private final String _setting;
+
+        /** Plugboard found. */
+        private final Permutation _plugboard;
+
+        /** _plugboard in cycle notation. */
+        private final String _plugboardCycles;
+
+        /** Index of coincidence of _plaintext. */
+        private final double _score;
+
+        /** Decryption with _plugboard. */
+        private final String _plaintext;
+    }
+
+    /** One hill-climb, starting from a plugboard chosen at random (or the
+     *  identity, for the first restart). */
+    private class Climb implements Callable<Climb> {
+
+        /** A climb using rotor permutations TABLES, which is restart number
+         *  RESTART. */
+        Climb(int[] tables, int restart) {
+            _tables = tables;
+            _restart = restart;
+        }
+
+        @Override
+        public Climb call() {
+            int n = _alphabet.size();
+            _plugs = new int[n];
+            _counts = new int[n];
+            for (int c = 0; c < n; c += 1) {
+                _plugs[c] = c;
+            }
+            if (_restart > 0) {
+                Random random = new Random(SEED + _restart);
+                int pairs = random.nextInt(_maxPairs + 1);
+                while (_pairs < pairs) {
+                    int a = random.nextInt(n), b = random.nextInt(n);
+                    if (a != b && _plugs[a] == a && _plugs[b] == b) {
+                        plug(a, b);
+                    }
+                }
+            }
+            _score = score();
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < n; a += 1) {
+                    for (int b = a + 1; b < n; b += 1) {
+                        improved |= tryMove(a, b);
+                    }
+                }
+            }
+            return this;
+        }
+
+        /** Change the plugboard by unplugging A and B if they are paired
+         *  with each other, and otherwise by pairing them (unplugging
+         *  their old partners).  Keep the change if it raises the score,
+         *  returning true, and otherwise undo it. */
+        private boolean tryMove(int a, int b) {
+            int pa = _plugs[a], pb = _plugs[b], pairs = _pairs;
+            if (pa == b) {
+                unplug(a);
+            } else {
+                unplug(a);
+                unplug(b);
+                if (_pairs == _maxPairs) {
+                    restore(a, pa, b, pb, pairs);
+                    return false;
+                }
+                plug(a, b);
+            }
+            double score = score();
+            if (score > _score) {
+                _score = score;
+                return true;
+            }
+            restore(a, pa, b, pb, pairs);
+            return false;
+        }
+
+        /** Undo a move of tryMove, given the old partners PA of A and PB of
+         *  B and the old number of PAIRS. */
+        private void restore(int a, int pa, int b, int pb, int pairs) {
+            unplug(a);
+            unplug(b);
+            _plugs[a] = pa;
+            _plugs[pa] = a;
+            _plugs[b] = pb;
+            _plugs[pb] = b;
+            _pairs = pairs;
+        }
+
+        /** Pair A and B, which must be unplugged. */
+        private void plug(int a, int b) {
+            _plugs[a] = b;
+            _plugs[b] = a;
+            _pairs += 1;
+        }
+
+        /** Unplug A and its partner, if any. */
+        private void unplug(int a) {
+            int pa = _plugs[a];
+            if (pa != a) {
+                _plugs[pa] = pa;
+                _plugs[a] = a;
+                _pairs -= 1;
+            }
+        }
+
+        /** Return the index of coincidence of the decryption of the
+         *  ciphertext with the current plugboard. */
+        private double score() {
+            int n = _alphabet.size();
+            int[] plugs = _plugs, counts = _counts;
+            Arrays.fill(counts, 0);
+            for (int i = 0, base = 0; i < _cipher.length; i += 1, base += n) {
+                counts[plugs[_tables[base + plugs[_cipher[i]]]]] += 1;
+            }
+            return indexOfCoincidence(counts);
+        }
+
+        /** Return a Solution for ROTORS and SETTING with my plugboard. */
+        Solution solution(String[] rotors, String setting) {
+            int n = _alphabet.size();
+            StringBuilder cycles = new StringBuilder();
+            for (int a = 0; a < n; a += 1) {
+                if (_plugs[a] > a) {
+                    if (cycles.length() > 0) {
+                        cycles.append(' ');
+                    }
+                    cycles.append('(').append(_alphabet.toChar(a))
+                        .append(_alphabet.toChar(_plugs[a])).append(')');
+                }
+            }
+            char[] plain = new char[_cipher.length];
+            for (int i = 0, base = 0; i < plain.length; i += 1, base += n) {
+                plain[i] = _alphabet.toChar(
+                    _plugs[_tables[base + _plugs[_cipher[i]]]]);
+            }
+            return new Solution(rotors.clone(), setting,
+                                new Permutation(_plugs.clone(), _alphabet),
+                                cycles.toString(), _score, new String(plain));
+        }
+
+        /** Rotor permutations at each ciphertext position. */
+        private final int[] _tables;
+
+        /** Which restart this is. */
+        private final int _restart;
+
+        /** Plugboard partner of each character (itself if unplugged). */
+        private int[] _plugs;
+
+        /** Number of pairs in _plugs. */
+        private int _pairs;
+
+        /** Character counts of the current decryption. */
+        private int[] _counts;
+
+        /** Score of _plugs. */
+        private double _score;
+    }
+
+    /** Seed for the random plugboards of restarts. */
+    private static final long SEED = 0x5eed;
+
+    /** Machine whose rotors are used. */
+    private final Machine _template;
+
+    /** Alphabet of _template. */
+    private final Alphabet _alphabet;
+
+    /** Largest number of plugboard pairs tried. */
+    private final int _maxPairs;
+
+    /** The ciphertext, as character indices. */
+    private final int[] _cipher;
+}
@@ -0,0 +1,82 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardSolver class.
+ *  @author Jacky Tian
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Plaintext of the test message. */
+    private static final String PLAIN =
+        ("It was the best of times it was the worst of times it was the age "
+         + "of wisdom it was the age of foolishness it was the epoch of "
+         + "belief it was the epoch of incredulity it was the season of "
+         + "light it was the season of darkness it was the spring of hope "
+         + "it was the winter of despair we had everything before us we "
+         + "had nothing before us we were all going direct to heaven we "
+         + "were all going direct the other way in short the period was "
+         + "so far like the present period that some of its noisiest "
+         + "authorities insisted on its being received for good or for "
+         + "evil in the superlative degree of comparison only")
+        .replace(" ", "").toUpperCase();
+
+    /** Rotors of the test machine. */
+    private static final String[] ROTORS = {"B", "BETA", "III", "IV", "I"};
+
+    /** Return a five-slot machine using ALL_ROTORS. */
+    private Machine machine() {
+        return new Machine(UPPER, 5, 3, ALL_ROTORS);
+    }
+
+    @Test
+    public void indexOfCoincidence() {
+        assertEquals(1.0, PlugboardSolver.indexOfCoincidence(new int[] {3}),
+                     1e-9);
+        assertEquals(0.0,
+                     PlugboardSolver.indexOfCoincidence(new int[] {1, 1}),
+                     1e-9);
+        assertEquals(4.0 / 12,
+                     PlugboardSolver.indexOfCoincidence(new int[] {2, 2}),
+                     1e-9);
+    }
+
+    @Test
+    public void recoversPlugboard() {
+        Machine machine = machine();
+        machine.insertRotors(ROTORS);
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        String cipher = machine.convert(PLAIN);
+        PlugboardSolver solver = new PlugboardSolver(machine(), cipher, 10);
+        PlugboardSolver.Solution solution =
+            solver.solve(ROTORS, "AXLE", 8, new ForkJoinPool(2));
+        assertEquals("* B BETA III IV I AXLE (BY) (EX) (HQ) (IP) (RT)",
+                     solution.toString());
+        assertEquals(PLAIN, solution.plaintext());
+        assertEquals('H', solution.plugboard().permute('Q'));
+    }
+
+    @Test
+    public void scoresPlaintextAboveWrongSetting() {
+        Machine machine = machine();
+        machine.insertRotors(ROTORS);
+        machine.setRotors("AXLE");
+        String cipher = machine.convert(PLAIN);
+        PlugboardSolver solver = new PlugboardSolver(machine(), cipher, 10);
+        double right = solver.solve(ROTORS, "AXLE", 1).score();
+        double wrong = solver.solve(ROTORS, "AXLF", 1).score();
+        assertTrue(right > 0.06 && wrong < right);
+    }
+}
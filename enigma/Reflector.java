@@ -14,6 +14,16 @@ class Reflector extends FixedRotor {
         // FIXME
     }
 
+    /** A reflector like ORIGINAL, sharing its tables. */
+    Reflector(Reflector original) {
+        super(original);
+    }
+
+    @Override
+    Rotor copy() {
+        return new Reflector(this);
+    }
+
     /** Return true iff I reflect. */
     boolean reflecting() {
         return true;
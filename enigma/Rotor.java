@@ -2,7 +2,10 @@ package enigma;
 
 import static enigma.EnigmaException.*;
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  For
+ *  alphabets of up to MAX_TABLE_SIZE characters, a rotor precomputes its
+ *  shifted forward and backward mappings for every setting when it is
+ *  first used, so that a conversion is a single array load.
  *  @author
  */
 class Rotor {
@@ -12,6 +15,84 @@ class Rotor {
         _name = name;
         _permutation = perm;
         _setting = 0;
+        _tabulated = perm.size() <= MAX_TABLE_SIZE;
+    }
+
+    /** A rotor with the same name, permutation and setting as ORIGINAL,
+     *  sharing its precomputed tables, which are computed first if
+     *  necessary so that all copies share one set.  Only the shared
+     *  tables of ORIGINAL are touched, so it may be copied while another
+     *  thread is using it. */
+    Rotor(Rotor original) {
+        _name = original._name;
+        _permutation = original._permutation;
+        _tabulated = original._tabulated;
+        if (original.buildTables()) {
+            _forwardTable = original._forwardTable;
+            _backwardTable = original._backwardTable;
+        }
+        _setting = original._setting;
+        selectRows();
+    }
+
+    /** Return a rotor like me whose setting can change independently of
+     *  mine. */
+    Rotor copy() {
+        return new Rotor(this);
+    }
+
+    /** Compile my tables (see buildTables) and point my current rows at
+     *  them, returning true, unless my alphabet is too large to tabulate,
+     *  in which case return false. */
+    private boolean compileTables() {
+        if (!buildTables()) {
+            return false;
+        }
+        selectRows();
+        return true;
+    }
+
+    /** Fill _forwardTable and _backwardTable so that row S, column P
+     *  gives the forward and backward conversions of P at setting S, if
+     *  that has not been done, and return true, unless my alphabet is too
+     *  large to tabulate, in which case return false.  The tables are
+     *  never changed once made, so copies made in other threads may share
+     *  them; this is the only change another thread makes to me.  My
+     *  monitor is held only while the tables are first built. */
+    private boolean buildTables() {
+        if (!_tabulated) {
+            return false;
+        }
+        if (_forwardTable == null) {
+            synchronized (this) {
+                if (_forwardTable == null) {
+                    int n = size();
+                    int[][] forward = new int[n][n],
+                        backward = new int[n][n];
+                    for (int s = 0; s < n; s += 1) {
+                        for (int p = 0; p < n; p += 1) {
+                            forward[s][p] =
+                                mod(_permutation.permute(p + s) - s, n);
+                            backward[s][p] =
+                                mod(_permutation.invert(p + s) - s, n);
+                        }
+                    }
+                    _backwardTable = backward;
+                    _forwardTable = forward;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Point the current rows at the tables for my setting, if I have
+     *  compiled tables. */
+    private void selectRows() {
+        int[][] forward = _forwardTable;
+        if (forward != null) {
+            _forwardRow = forward[_setting];
+            _backwardRow = _backwardTable[_setting];
+        }
     }
 
     /** Return my name. */
@@ -51,12 +132,13 @@ class Rotor {
 
     /** Set setting() to POSN.  */
     void set(int posn) {
-        _setting = mod(posn, 26);
+        _setting = mod(posn, size());
+        selectRows();
     }
 
     /** Set setting() to character CPOSN. */
     void set(char cposn) {
-        _setting = alphabet().toInt(cposn);
+        set(alphabet().toInt(cposn));
     }
 
     /** Return the value of P modulo the input SIZE. */
@@ -71,15 +153,31 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int result = _permutation.permute(p+_setting % size());
-        return mod(result-_setting, size());   // FIXME
+        if (_forwardRow != null || _tabulated && compileTables()) {
+            return _forwardRow[p];
+        }
+        int result = _permutation.permute(p + _setting);
+        return mod(result - _setting, size());
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int result = _permutation.invert(e+_setting % size());
-        return mod(result-_setting, size());   // FIXME
+        if (_backwardRow != null || _tabulated && compileTables()) {
+            return _backwardRow[e];
+        }
+        int result = _permutation.invert(e + _setting);
+        return mod(result - _setting, size());
+    }
+
+    /** Return the permutation performed by convertForward at my current
+     *  setting. */
+    Permutation currentPermutation() {
+        int[] table = new int[size()];
+        for (int p = 0; p < table.length; p += 1) {
+            table[p] = convertForward(p);
+        }
+        return new Permutation(table, alphabet());
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
@@ -88,6 +186,12 @@ class Rotor {
         return false;
     }
 
+    /** Return the number of advances needed before atNotch() holds: 0 if
+     *  it holds now, or -1 if it never does.  By default, returns -1. */
+    int stepsToNotch() {
+        return -1;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -101,9 +205,34 @@ class Rotor {
     private final String _name;
 
     /** The permutation implemnted by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
 
     /** The setting implemented by the rotor at the current stage. */
     private int _setting;
 
+    /** Largest alphabet for which a rotor compiles its per-setting
+     *  tables. */
+    static final int MAX_TABLE_SIZE = 256;
+
+    /** True iff my alphabet is small enough (MAX_TABLE_SIZE) for me to
+     *  compile per-setting tables; decided once, so that rotors that
+     *  cannot be tabulated do not try again for every character. */
+    private final boolean _tabulated;
+
+    /** Forward conversions indexed by [setting][input], or null if they
+     *  have not been computed or my alphabet is too large to tabulate.
+     *  Volatile (and set after _backwardTable) because a copy made in
+     *  another thread may compute it. */
+    private volatile int[][] _forwardTable;
+
+    /** Backward conversions indexed by [setting][input], or null if they
+     *  have not been computed or my alphabet is too large to tabulate. */
+    private volatile int[][] _backwardTable;
+
+    /** The row of _forwardTable for my current setting. */
+    private int[] _forwardRow;
+
+    /** The row of _backwardTable for my current setting. */
+    private int[] _backwardRow;
+
 }
@@ -0,0 +1,286 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running converter serving many sessions over a local socket
+ *  (loopback TCP or a Unix domain socket), so that the configuration is
+ *  read and compiled once rather than by a new JVM for every message.
+ *
+ *  Each connection is one session.  The client sends text in the format
+ *  of Main's input (settings lines, each followed by message lines), and
+ *  receives the converted messages in the format of Main's output as
+ *  each line is converted.  Once the client shuts down its output, the
+ *  server finishes and closes the connection.  An error ends the session
+ *  with a line "Error: MESSAGE".
+ *
+ *  Sessions run on virtual threads where the platform has them (Java 21
+ *  or later), and otherwise on a cached pool of daemon threads.  Each
+ *  session borrows a machine from a MachinePool, and on closing logs its
+ *  latency: the time from receiving each piece of input to having sent
+ *  the output for it.
+ *  @author Jacky Tian
+ */
+class Server implements Closeable {
+
+    /** A server converting with copies of TEMPLATE, listening at ADDRESS
+     *  (see address(String)), logging sessions to LOG if it is not null
+     *  and recording settings blocks in METRICS if it is not null. */
+    Server(Machine template, SocketAddress address, PrintStream log,
+           Metrics metrics) throws IOException {
+        _machines = new MachinePool(template);
+        _log = log;
+        _metrics = metrics;
+        if (address instanceof UnixDomainSocketAddress) {
+            _channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            _socketPath = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(_socketPath);
+        } else {
+            _channel = ServerSocketChannel.open();
+            _socketPath = null;
+        }
+        _channel.bind(address);
+        _sessions = sessionExecutor();
+    }
+
+    /** Return the address denoted by SPEC: a port number on the loopback
+     *  interface (0 for any free port), or otherwise the path of a Unix
+     *  domain socket. */
+    static SocketAddress address(String spec) {
+        if (spec.isEmpty()) {
+            throw error("missing server address");
+        }
+        if (spec.chars().allMatch(Character::isDigit)) {
+            try {
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                             Integer.parseInt(spec));
+            } catch (IllegalArgumentException excp) {
+                throw error("bad port: %s", spec);
+            }
+        }
+        return UnixDomainSocketAddress.of(spec);
+    }
+
+    /** Return the address I am listening at. */
+    SocketAddress address() throws IOException {
+        return _channel.getLocalAddress();
+    }
+
+    /** Return my pool of machines. */
+    MachinePool machines() {
+        return _machines;
+    }
+
+    /** Accept and serve connections until I am closed. */
+    void serve() throws IOException {
+        try {
+            while (true) {
+                SocketChannel client = _channel.accept();
+                int id = _numSessions.incrementAndGet();
+                _sessions.execute(() -> session(client, id));
+            }
+        } catch (ClosedChannelException excp) {
+            /* Closed by close(). */
+        }
+    }
+
+    /** Stop accepting connections.  Sessions in progress are
+     *  finished. */
+    @Override
+    public void close() throws IOException {
+        _channel.close();
+        _sessions.shutdown();
+        if (_socketPath != null) {
+            Files.deleteIfExists(_socketPath);
+        }
+    }
+
+    /** Serve session number ID on CLIENT. */
+    private void session(SocketChannel client, int id) {
+        Machine machine = _machines.acquire();
+        SessionStats stats = new SessionStats(id);
+        Writer output = Channels.newWriter(client,
+                                           StandardCharsets.UTF_8.newEncoder(),
+                                           BUFFER_SIZE);
+        try {
+            try {
+                converse(client,
+                         new StreamConverter(machine, null, output,
+                                             _metrics),
+                         output, stats);
+            } catch (EnigmaException excp) {
+                output.write("Error: " + excp.getMessage()
+                             + System.lineSeparator());
+                stats._error = excp.getMessage();
+            }
+            output.flush();
+        } catch (IOException excp) {
+            stats._error = excp.getMessage();
+        } finally {
+            _machines.release(machine);
+            if (_log != null) {
+                _log.println(stats);
+            }
+            try {
+                client.close();
+            } catch (IOException excp) {
+                /* Nothing more to do for this session. */
+            }
+        }
+    }
+
+    /** Convert the input from CHANNEL with CONVERTER, which writes to
+     *  OUTPUT, recording latencies in STATS. */
+    private void converse(SocketChannel channel, StreamConverter converter,
+                          Writer output, SessionStats stats)
+        throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+        boolean atEnd = false;
+        while (!atEnd) {
+            atEnd = channel.read(bytes) < 0;
+            long start = System.nanoTime();
+            bytes.flip();
+            CoderResult result;
+            do {
+                result = decoder.decode(bytes, chars, atEnd);
+                if (atEnd && result.isUnderflow()) {
+                    result = decoder.flush(chars);
+                }
+                chars.flip();
+                stats._chars += chars.remaining();
+                converter.process(chars);
+                chars.clear();
+            } while (result.isOverflow());
+            bytes.compact();
+            if (atEnd) {
+                converter.finish();
+            } else {
+                output.flush();
+            }
+            stats.record(System.nanoTime() - start);
+        }
+    }
+
+    /** Return an executor running each task on a new virtual thread, if
+     *  the platform supports them, and otherwise on pooled daemon
+     *  threads. */
+    private static ExecutorService sessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newCachedThreadPool((task) -> {
+                Thread thread = new Thread(task, "enigma-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Latency measurements for one session. */
+    static class SessionStats {
+
+        /** Statistics for session number ID. */
+        SessionStats(int id) {
+            _id = id;
+        }
+
+        /** Record a piece of input that took NANOS nanoseconds from
+         *  receipt to sending its output. */
+        void record(long nanos) {
+            _count += 1;
+            _totalNanos += nanos;
+            _maxNanos = Math.max(_maxNanos, nanos);
+        }
+
+        /** Return the mean latency in microseconds. */
+        double meanMicros() {
+            return _count == 0 ? 0.0 : _totalNanos / 1e3 / _count;
+        }
+
+        /** Return the largest latency in microseconds. */
+        double maxMicros() {
+            return _maxNanos / 1e3;
+        }
+
+        @Override
+        public String toString() {
+            String line = String.format("session %d: %d chars in %d reads, "
+                                        + "latency mean %.1f us, "
+                                        + "max %.1f us",
+                                        _id, _chars, _count, meanMicros(),
+                                        maxMicros());
+            return _error == null ? line : line + ", error: " + _error;
+        }
+
+        /** Session number. */
+        private final int _id;
+
+        /** Number of characters received. */
+        private long _chars;
+
+        /** Number of pieces of input received. */
+        private long _count;
+
+        /** Total latency of the pieces of input, in nanoseconds. */
+        private long _totalNanos;
+
+        /** Largest latency, in nanoseconds. */
+        private long _maxNanos;
+
+        /** The error that ended the session, or null. */
+        private String _error;
+    }
+
+    /** Size of each session's buffers. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** The listening channel. */
+    private final ServerSocketChannel _channel;
+
+    /** Path of my Unix domain socket, or null if I use TCP. */
+    private final Path _socketPath;
+
+    /** Machines for sessions. */
+    private final MachinePool _machines;
+
+    /** Runs the sessions. */
+    private final ExecutorService _sessions;
+
+    /** Where session statistics are logged, or null. */
+    private final PrintStream _log;
+
+    /** Where settings blocks are recorded, or null. */
+    private final Metrics _metrics;
+
+    /** Number of sessions accepted. */
+    private final AtomicInteger _numSessions = new AtomicInteger();
+}
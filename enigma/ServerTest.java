@@ -0,0 +1,161 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for MachinePool and Server.
+ *  @author Jacky Tian
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return the input of session number K. */
+    private String input(int k) {
+        StringBuilder text = new StringBuilder();
+        text.append("* B BETA III IV I AXL").append((char) ('A' + k))
+            .append(" (HQ) (EX)\n");
+        for (int i = 0; i < 30; i += 1) {
+            text.append("from his shoulder hiawatha\n");
+        }
+        return text.toString();
+    }
+
+    /** Return the expected output for INPUT. */
+    private String expected(String input) {
+        StringWriter output = new StringWriter();
+        StreamConverter converter =
+            new StreamConverter(freshMachine(5, null), output);
+        converter.process(CharBuffer.wrap(input));
+        converter.finish();
+        return output.toString();
+    }
+
+    /** Send INPUT to the server at ADDRESS and return its reply. */
+    private String converse(SocketAddress address, String input)
+        throws IOException {
+        SocketChannel channel =
+            address instanceof UnixDomainSocketAddress
+            ? SocketChannel.open(StandardProtocolFamily.UNIX)
+            : SocketChannel.open();
+        try (SocketChannel client = channel) {
+            client.connect(address);
+            ByteBuffer request =
+                ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+            while (request.hasRemaining()) {
+                client.write(request);
+            }
+            client.shutdownOutput();
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(1024);
+            while (client.read(buffer) >= 0) {
+                reply.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            return new String(reply.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /** Start serving on SERVER in the background. */
+    private void start(Server server) {
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException excp) {
+                throw new IllegalStateException(excp);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Test
+    public void poolReusesMachines() {
+        MachinePool pool = new MachinePool(freshMachine(5, null));
+        Machine first = pool.acquire();
+        Machine second = pool.acquire();
+        assertNotSame(first, second);
+        pool.release(first);
+        assertSame(first, pool.acquire());
+        assertEquals(2, pool.created());
+    }
+
+    @Test
+    public void addresses() {
+        SocketAddress tcp = Server.address("4000");
+        assertTrue(tcp instanceof InetSocketAddress);
+        assertTrue(((InetSocketAddress) tcp).getAddress().isLoopbackAddress());
+        assertEquals(4000, ((InetSocketAddress) tcp).getPort());
+        assertTrue(Server.address("/tmp/enigma.sock")
+                   instanceof UnixDomainSocketAddress);
+    }
+
+    @Test
+    public void concurrentSessions() throws Exception {
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try (Server server = new Server(freshMachine(5, null),
+                                        Server.address("0"),
+                                        new PrintStream(log, true),
+                                        null)) {
+            start(server);
+            SocketAddress address = server.address();
+            ArrayList<Future<String>> replies = new ArrayList<>();
+            for (int k = 0; k < 8; k += 1) {
+                String input = input(k);
+                replies.add(clients.submit(() -> converse(address, input)));
+            }
+            for (int k = 0; k < 8; k += 1) {
+                assertEquals(expected(input(k)), replies.get(k).get());
+            }
+            assertTrue(server.machines().created() <= 8);
+            assertEquals("not an error", "Error: Wrong setting format",
+                         converse(address, "HELLO\n").trim());
+        } finally {
+            clients.shutdown();
+        }
+        String stats = log.toString();
+        assertTrue(stats.contains("latency mean"));
+        assertTrue(stats.contains("error: Wrong setting format"));
+    }
+
+    @Test
+    public void unixDomainSocket() throws Exception {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("server.sock");
+        try (Server server = new Server(freshMachine(5, null),
+                                        Server.address(socket.toString()),
+                                        null, null)) {
+            start(server);
+            assertEquals(expected(input(1)),
+                         converse(server.address(), input(1)));
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts text in the format of Main's input (settings lines, each
+ *  followed by message lines) in a single pass, writing the results in
+ *  the format of Main's output.  Input is supplied in arbitrary chunks;
+ *  message characters are normalized and converted through one reusable
+ *  buffer, so memory use does not depend on the length of the input or
+ *  of its lines.
+ *
+ *  A line whose first non-blank character is '*' is a settings line.
+ *  As in Main, empty lines directly after a settings line are ignored, and
+ *  empty lines at the end of the input are not echoed.
+ *  @author Jacky Tian
+ */
+class StreamConverter {
+
+    /** A converter that sets up and uses MACHINE, writing to OUTPUT. */
+    StreamConverter(Machine machine, Writer output) {
+        this(machine, null, output);
+    }
+
+    /** A converter that sets up and uses MACHINE, or takes the keystreams
+     *  for settings lines from KEYSTREAMS if it is not null, writing to
+     *  OUTPUT. */
+    StreamConverter(Machine machine, KeystreamCache keystreams,
+                    Writer output) {
+        this(machine, keystreams, output, null);
+    }
+
+    /** A converter as above that also records each settings block, and
+     *  the time spent parsing, converting and writing, in METRICS, if it
+     *  is not null.  Characters taken from KEYSTREAMS count as one rotor
+     *  step each, since no machine steps for them. */
+    StreamConverter(Machine machine, KeystreamCache keystreams,
+                    Writer output, Metrics metrics) {
+        _machine = machine;
+        _keystreams = keystreams;
+        _output = output;
+        _metrics = metrics;
+    }
+
+    /** Convert all remaining characters of INPUT. */
+    void process(CharBuffer input) {
+        long start = _metrics == null ? 0 : System.nanoTime();
+        long timed = _timedNanos;
+        try {
+            while (input.hasRemaining()) {
+                char c = input.get();
+                if (c == '\n') {
+                    endLine();
+                } else if (c != '\r') {
+                    addChar(c);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        if (_metrics != null) {
+            _metrics.addTime(Metrics.Phase.PARSE,
+                             System.nanoTime() - start
+                             - (_timedNanos - timed));
+        }
+    }
+
+    /** Finish converting, once all input has been passed to process, and
+     *  flush the output. */
+    void finish() {
+        try {
+            if (_lineLength > 0) {
+                endLine();
+            }
+            long start = _metrics == null ? 0 : System.nanoTime();
+            _output.flush();
+            if (_metrics != null) {
+                long nanos = System.nanoTime() - start;
+                _outputNanos += nanos;
+                _timedNanos += nanos;
+            }
+            endBlock();
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+    }
+
+    /** Handle the next character, C, of the current line. */
+    private void addChar(char c) throws IOException {
+        _lineLength += 1;
+        if (_settingsLine) {
+            _settings.append(c);
+            return;
+        }
+        if (c == ' ') {
+            return;
+        }
+        if (!_contentSeen) {
+            startContent(c == '*');
+            if (_settingsLine) {
+                _settings.append(c);
+                return;
+            }
+        }
+        if (_numPending == _pending.length) {
+            flushPending();
+        }
+        _pending[_numPending] = Character.toUpperCase(c);
+        _numPending += 1;
+    }
+
+    /** Called at the first non-blank character of a line, which is a
+     *  settings line iff SETTINGS. */
+    private void startContent(boolean settings) throws IOException {
+        _contentSeen = true;
+        if (_setting != null) {
+            endBlock();
+            _blockStart = System.nanoTime();
+            _blockSteps = _machine.rotorSteps();
+            if (_keystreams != null) {
+                _converter = _keystreams.get(_setting).cursor();
+            } else {
+                Main.setUp(_machine, _setting);
+                _converter = _machine;
+            }
+            long nanos = System.nanoTime() - _blockStart;
+            _convertNanos += nanos;
+            _timedNanos += nanos;
+            _setting = null;
+            _blockStarted = true;
+        } else if (!settings && !_blockStarted) {
+            throw new EnigmaException("Wrong setting format");
+        }
+        for (; _emptyLines > 0; _emptyLines -= 1) {
+            _output.write(NEWLINE);
+        }
+        _settingsLine = settings;
+    }
+
+    /** Record the settings block in progress, if any, and the time
+     *  spent converting and writing since the last call, in _metrics. */
+    private void endBlock() {
+        if (_metrics != null && _blockStarted) {
+            long steps =
+                _converter == _machine ? _machine.rotorSteps() - _blockSteps
+                : _blockChars;
+            _metrics.recordBlock(_blockChars, steps,
+                                 System.nanoTime() - _blockStart);
+            _metrics.addTime(Metrics.Phase.CONVERT, _convertNanos);
+            _metrics.addTime(Metrics.Phase.OUTPUT, _outputNanos);
+        }
+        _blockChars = 0;
+        _convertNanos = _outputNanos = 0;
+    }
+
+    /** Handle the end of the current line. */
+    private void endLine() throws IOException {
+        if (_settingsLine) {
+            _setting = _settings.toString().toUpperCase();
+            _settings.setLength(0);
+            _skipEmpty = true;
+        } else if (_lineLength == 0) {
+            if (!_skipEmpty) {
+                _emptyLines += 1;
+            }
+        } else {
+            flushPending();
+            if (_groupLength > 0 || _numGroups > 0) {
+                _output.write(NEWLINE);
+            }
+            _skipEmpty = false;
+        }
+        _lineLength = 0;
+        _contentSeen = _settingsLine = false;
+        _numGroups = _groupLength = 0;
+    }
+
+    /** Convert the pending message characters and write them in groups of
+     *  five. */
+    private void flushPending() throws IOException {
+        long start = _metrics == null ? 0 : System.nanoTime();
+        _converter.convert(_pending, 0, _pending, 0, _numPending);
+        long converted = _metrics == null ? 0 : System.nanoTime();
+        _blockChars += _numPending;
+        int k = 0;
+        for (int i = 0; i < _numPending; i += 1) {
+            if (_groupLength == GROUP_SIZE) {
+                _grouped[k] = ' ';
+                k += 1;
+                _numGroups += 1;
+                _groupLength = 0;
+            }
+            _grouped[k] = _pending[i];
+            k += 1;
+            _groupLength += 1;
+        }
+        _output.write(_grouped, 0, k);
+        _numPending = 0;
+        if (_metrics != null) {
+            long end = System.nanoTime();
+            _convertNanos += converted - start;
+            _outputNanos += end - converted;
+            _timedNanos += end - start;
+        }
+    }
+
+    /** Line separator written after each output line. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** Number of characters in each output group. */
+    private static final int GROUP_SIZE = 5;
+
+    /** Capacity of the buffer of pending message characters. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+
+    /** Source of keystreams for settings lines, or null. */
+    private final KeystreamCache _keystreams;
+
+    /** Where settings blocks are recorded, or null. */
+    private final Metrics _metrics;
+
+    /** Time at which the current settings block was set up
+     *  (System.nanoTime). */
+    private long _blockStart;
+
+    /** The machine's rotorSteps() when the current settings block was set
+     *  up. */
+    private long _blockSteps;
+
+    /** Number of characters converted in the current settings block. */
+    private long _blockChars;
+
+    /** Time spent setting up and converting since the last endBlock, in
+     *  nanoseconds. */
+    private long _convertNanos;
+
+    /** Time spent writing output since the last endBlock, in
+     *  nanoseconds. */
+    private long _outputNanos;
+
+    /** Total time spent setting up, converting and writing, in
+     *  nanoseconds, which process does not count as parsing. */
+    private long _timedNanos;
+
+    /** Converter for the current block of messages. */
+    private CharConverter _converter;
+
+    /** Destination of converted text. */
+    private final Writer _output;
+
+    /** Normalized message characters not yet converted. */
+    private final char[] _pending = new char[BUFFER_SIZE];
+
+    /** Converted characters of _pending with group separators added. */
+    private final char[] _grouped = new char[2 * BUFFER_SIZE];
+
+    /** Number of valid characters in _pending. */
+    private int _numPending;
+
+    /** The text of the current settings line. */
+    private final StringBuilder _settings = new StringBuilder();
+
+    /** The last settings line read, if it has not yet been applied.  It
+     *  is applied only once some non-blank text follows it. */
+    private String _setting;
+
+    /** True iff a settings line has been applied. */
+    private boolean _blockStarted;
+
+    /** True iff the current line is a settings line. */
+    private boolean _settingsLine;
+
+    /** True iff a non-blank character has been seen on the current
+     *  line. */
+    private boolean _contentSeen;
+
+    /** Number of characters on the current line. */
+    private int _lineLength;
+
+    /** True iff empty lines are currently ignored, as they are directly
+     *  after a settings line. */
+    private boolean _skipEmpty;
+
+    /** Number of empty lines not yet echoed, because no non-blank text has
+     *  followed them yet. */
+    private int _emptyLines;
+
+    /** Number of complete groups written on the current output line. */
+    private int _numGroups;
+
+    /** Number of characters in the current output group. */
+    private int _groupLength;
+}
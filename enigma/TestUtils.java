@@ -137,4 +137,26 @@ class TestUtils {
         ALL_ROTORS.add(new MovingRotor("IV", new Permutation("(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)", UPPER), "J"));
     }
 
+    /** A settings line for a five-slot machine using ALL_ROTORS. */
+    static final String STANDARD_SETTINGS =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR)";
+
+    /** Return a new machine for UPPER with NUMROTORS slots and PAWLS
+     *  pawls, whose rotors are copies of ALL_ROTORS of its own (so that
+     *  tests do not disturb each other's rotor settings), set up from the
+     *  settings line SETTINGS by Main.setUp unless it is null. */
+    static Machine freshMachine(int numRotors, int pawls, String settings) {
+        Machine machine =
+            new Machine(UPPER, numRotors, pawls, ALL_ROTORS).copy();
+        if (settings != null) {
+            Main.setUp(machine, settings);
+        }
+        return machine;
+    }
+
+    /** Return freshMachine(NUMROTORS, 3, SETTINGS). */
+    static Machine freshMachine(int numRotors, String settings) {
+        return freshMachine(numRotors, 3, settings);
+    }
+
 }
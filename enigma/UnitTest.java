@@ -10,7 +10,14 @@ public class UnitTest {
     /** Run the JUnit tests in this package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        textui.runClasses(PermutationTest.class, MovingRotorTest.class, MachineTest.class);
+        textui.runClasses(PermutationTest.class, MovingRotorTest.class,
+                          MachineTest.class, AlphabetTest.class,
+                          KeystreamCacheTest.class, ConfigSnapshotTest.class,
+                          BombeTest.class, PlugboardSolverTest.class,
+                          MultiStreamTest.class, EnigmaStreamsTest.class,
+                          ByteMachineTest.class, PipelineTest.class,
+                          ServerTest.class, MetricsTest.class,
+                          CycleCatalogTest.class, MainTest.class);
     }
 
 }
@@ -0,0 +1,62 @@
+package enigma;
+
+import java.util.List;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A MultiStream whose rotor passes use vector gathers from the
+ *  incubating Vector API, one lane per vector element.  This class needs
+ *  the jdk.incubator.vector module both to compile and to run (see the
+ *  Makefile); MultiStream.create falls back to the scalar passes when it
+ *  cannot be loaded.
+ *  @author Jacky Tian
+ */
+class VectorMultiStream extends MultiStream {
+
+    /** A vectorized multi-stream converter for MACHINES (see
+     *  MultiStream). */
+    VectorMultiStream(List<Machine> machines) {
+        super(machines);
+    }
+
+    @Override
+    boolean vectorized() {
+        return true;
+    }
+
+    @Override
+    void mapLanes(int[] x, int count) {
+        int bound = SPECIES.loopBound(count);
+        int[] index = _index;
+        for (int l = 0; l < bound; l += SPECIES.length()) {
+            IntVector v = IntVector.fromArray(SPECIES, x, l);
+            v = gather(_plugs, _plugBase, l, v, index);
+            for (int i = _numRotors - 1; i >= 0; i -= 1) {
+                v = gather(_forward, _base[i], l, v, index);
+            }
+            for (int i = 1; i < _numRotors; i += 1) {
+                v = gather(_backward, _base[i], l, v, index);
+            }
+            v = gather(_plugs, _plugBase, l, v, index);
+            v.intoArray(x, l);
+        }
+        mapLanes(x, bound, count);
+    }
+
+    /** Return the vector whose element K is TABLE[BASE[L + K] + V[K]],
+     *  using INDEX to hold the indices. */
+    private static IntVector gather(int[] table, int[] base, int l,
+                                    IntVector v, int[] index) {
+        IntVector.fromArray(SPECIES, base, l).add(v).intoArray(index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, index, 0);
+    }
+
+    /** The vector shape used. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Scratch space for the gather indices of one vector, allocated
+     *  once so that mapLanes does not allocate. */
+    private final int[] _index = new int[SPECIES.length()];
+}